@@ -0,0 +1,55 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * JDK Vector APIによるSIMD版の二乗ユークリッド距離カーネル
+ * レーン幅ごとに差の二乗をFMAでベクトルに累積し、最後に1回だけレーンを合計する
+ * レーン幅に満たない端数（列数がレーン幅未満の場合は行全体）は128ビット幅でまとめ、残りをスカラーで加算する
+ * （マスク付き読み込みは列数が少ない場合にスカラー版より遅いため使わない）
+ *
+ * jdk.incubator.vector モジュールが必要なため src/ とは別にコンパイルし（src-vector/）、DistanceKernelからリフレクションで読み込む
+ * （このクラスをコンパイルしていない場合もスカラー版で動作する）
+ */
+final class VectorDistanceKernel extends DistanceKernel {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Double> PAIR = DoubleVector.SPECIES_128;
+
+    @Override
+    double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length) {
+        double total = 0;
+        int c = 0;
+        int bound = SPECIES.loopBound(length);
+        if (bound > 0) {
+            DoubleVector sum = DoubleVector.zero(SPECIES);
+            for (; c < bound; c += SPECIES.length()) {
+                DoubleVector d = DoubleVector.fromArray(SPECIES, a, aOffset + c)
+                    .sub(DoubleVector.fromArray(SPECIES, b, bOffset + c));
+                sum = d.fma(d, sum);
+            }
+            total = sum.reduceLanes(VectorOperators.ADD);
+        }
+        // 端数（列数がレーン幅未満の場合は行全体）は128ビット幅でまとめ、残りをスカラーで加算
+        if (length - c >= PAIR.length()) {
+            int pairs = c + PAIR.loopBound(length - c);
+            DoubleVector sum = DoubleVector.zero(PAIR);
+            for (; c < pairs; c += PAIR.length()) {
+                DoubleVector d = DoubleVector.fromArray(PAIR, a, aOffset + c)
+                    .sub(DoubleVector.fromArray(PAIR, b, bOffset + c));
+                sum = d.fma(d, sum);
+            }
+            total += sum.reduceLanes(VectorOperators.ADD);
+        }
+        for (; c < length; c++) {
+            double d = a[aOffset + c] - b[bOffset + c];
+            total += d * d;
+        }
+        return total;
+    }
+
+    @Override
+    String description() {
+        return "SIMD (Vector API, double × " + SPECIES.length() + "レーン)";
+    }
+}
@@ -0,0 +1,277 @@
+import weka.core.Instances;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * 分析パイプラインのベンチマーク
+ * 合成データ（回答者数 × フレームワーク数の組み合わせ）に対して各処理をウォームアップ後に複数回計測し、
+ * 結果をJSONで output/benchmarks/ に保存する（実行ごとに別ファイルのため、回帰の追跡に使える）
+ *
+ * 各処理が書き出す results/ csv_data/ output/ は一時ディレクトリに置き（--output-root は常に上書き）、終了時に削除する
+ * （リポジトリの分析結果を合成データの結果で上書きしないため）
+ *
+ * 使い方: java AnalysisBenchmark --respondents=1000,100000 --frameworks=6,100 --warmup=2 --iterations=5
+ * ベンチマーク用以外の引数（--kmeans=minibatch など）は分析オプションとしてそのまま渡す
+ */
+public class AnalysisBenchmark {
+
+    private static final String[] ALL_BENCHMARKS = {
+        "load", "standardize", "findOptimalK", "kmeans", "hierarchical", "contradiction", "csv"
+    };
+
+    /** 1フレームワークあたりの最小回答数（これ未満だと回答のないフレームワークが出るため組み合わせを除外） */
+    private static final int MIN_RESPONDENTS_PER_FRAMEWORK = 10;
+
+    private interface Body {
+        void run() throws Exception;
+    }
+
+    private static final class Result {
+        final String benchmark;
+        final long respondents;
+        final int frameworks;
+        final double[] millis;
+
+        Result(String benchmark, long respondents, int frameworks, double[] millis) {
+            this.benchmark = benchmark;
+            this.respondents = respondents;
+            this.frameworks = frameworks;
+            this.millis = millis;
+        }
+
+        double mean() {
+            double sum = 0;
+            for (double m : millis) sum += m;
+            return sum / millis.length;
+        }
+
+        double stdDev() {
+            if (millis.length < 2) return 0;
+            double mean = mean();
+            double sum = 0;
+            for (double m : millis) sum += (m - mean) * (m - mean);
+            return Math.sqrt(sum / (millis.length - 1));
+        }
+
+        double percentile(double p) {
+            double[] sorted = millis.clone();
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(sorted.length - 1, Math.round(p / 100 * (sorted.length - 1)))];
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        long[] respondents = {1_000, 100_000};
+        int[] frameworks = {6, 100};
+        int warmup = 2;
+        int iterations = 5;
+        long seed = 42;
+        Set<String> benchmarks = new LinkedHashSet<>(Arrays.asList(ALL_BENCHMARKS));
+        File out = null;
+        List<String> analysisArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "--respondents":
+                    respondents = Arrays.stream(value.split(",")).mapToLong(SyntheticSurveyGenerator::parseCount).toArray();
+                    break;
+                case "--frameworks":
+                    frameworks = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).toArray();
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(value);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(value);
+                    break;
+                case "--benchmarks":
+                    benchmarks = new LinkedHashSet<>(Arrays.asList(value.split(",")));
+                    for (String benchmark : benchmarks) {
+                        if (!Arrays.asList(ALL_BENCHMARKS).contains(benchmark)) {
+                            throw new IllegalArgumentException("不明なベンチマーク: " + benchmark + "（利用可能: "
+                                + String.join(", ", ALL_BENCHMARKS) + "）");
+                        }
+                    }
+                    break;
+                case "--out":
+                    out = new File(value);
+                    break;
+                default:
+                    analysisArgs.add(arg);
+            }
+        }
+        if (iterations < 1) {
+            throw new IllegalArgumentException("--iterations は1以上が必要です: " + iterations);
+        }
+        AnalysisOptions options = AnalysisOptions.parse(analysisArgs.toArray(new String[0]));
+        File scratch = Files.createTempDirectory("analysis-benchmark").toFile();
+        options.outputRoot = new File(scratch, "output-root");
+        NextjsWekaAnalysis.configure(options);
+        NextjsWekaAnalysis.createDirectories();
+
+        System.out.println("=== 分析ベンチマーク開始 ===");
+        System.out.println("回答者数: " + Arrays.toString(respondents) + ", フレームワーク数: " + Arrays.toString(frameworks)
+            + ", ウォームアップ" + warmup + "回, 計測" + iterations + "回, " + options.threads + "スレッド, 距離カーネル "
+            + DistanceKernel.INSTANCE.description());
+
+        List<Result> results = new ArrayList<>();
+        try {
+            for (long n : respondents) {
+                for (int f : frameworks) {
+                    if (n < (long) f * MIN_RESPONDENTS_PER_FRAMEWORK) {
+                        System.out.printf("スキップ: 回答者%d / フレームワーク%d（1フレームワークあたり%d回答未満）\n",
+                            n, f, MIN_RESPONDENTS_PER_FRAMEWORK);
+                        continue;
+                    }
+                    File file = new File(scratch, "respondents_" + n + "_" + f + ".csv");
+                    new SyntheticSurveyGenerator(f, seed).writeRespondents(file, n);
+                    runCombination(results, benchmarks, file, n, f, options, warmup, iterations);
+                    file.delete();
+                }
+            }
+        } finally {
+            deleteRecursively(scratch);
+        }
+
+        if (out == null) {
+            new File("output/benchmarks").mkdirs();
+            out = new File("output/benchmarks/benchmark-"
+                + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".json");
+        }
+        writeJson(out, results, analysisArgs, warmup, iterations, seed, options.threads);
+        System.out.println("ベンチマーク結果を保存: " + out.getPath());
+        System.out.println("=== 分析ベンチマーク完了 ===");
+    }
+
+    private static void runCombination(List<Result> results, Set<String> benchmarks, File file, long n, int f,
+                                       AnalysisOptions options, int warmup, int iterations) throws Exception {
+        // 計測対象以外の前処理は1回だけ実行し、各ベンチマークで共有
+        Instances data = quietly(() -> NextjsWekaAnalysis.loadRespondentData(file, options.chunkSize));
+        String[] names = NextjsWekaAnalysis.frameworkNames(data);
+        Instances standardized = quietly(() -> NextjsWekaAnalysis.standardizeData(data));
+        PrincipalComponentAnalysis pca = benchmarks.contains("csv")
+            ? quietly(() -> NextjsWekaAnalysis.performWekaPCA(standardized, names))
+            : null;
+        SortedMap<Integer, Double> timeSeries = NextjsWekaAnalysis.retentionTimeSeries();
+        KMeansResult kmeans = benchmarks.contains("csv")
+            ? quietly(() -> NextjsWekaAnalysis.performWekaKMeans(standardized, names))
+            : null;
+
+        for (String benchmark : benchmarks) {
+            Body body;
+            switch (benchmark) {
+                case "load":
+                    body = () -> NextjsWekaAnalysis.loadRespondentData(file, options.chunkSize);
+                    break;
+                case "standardize":
+                    body = () -> NextjsWekaAnalysis.standardizeData(data);
+                    break;
+                case "findOptimalK":
+                    body = () -> NextjsWekaAnalysis.findOptimalK(standardized, 2, 5);
+                    break;
+                case "kmeans":
+                    body = () -> NextjsWekaAnalysis.performWekaKMeans(standardized, names);
+                    break;
+                case "hierarchical":
+                    body = () -> NextjsWekaAnalysis.performWekaHierarchical(standardized, names);
+                    break;
+                case "contradiction":
+                    body = () -> NextjsWekaAnalysis.performContradictionAnalysis(data);
+                    break;
+                default:
+                    body = () -> NextjsWekaAnalysis.generateCSVDatasets(data, kmeans, pca, timeSeries);
+            }
+            Result result = measure(benchmark, n, f, warmup, iterations, body);
+            results.add(result);
+            System.out.printf("%-14s 回答者%,12d  フレームワーク%,6d  平均 %10.3fms ± %.3f (最小 %.3f)\n",
+                benchmark, n, f, result.mean(), result.stdDev(), result.percentile(0));
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static Result measure(String benchmark, long n, int f, int warmup, int iterations, Body body)
+            throws Exception {
+        double[] millis = new double[iterations];
+        PrintStream console = System.out;
+        // 各処理のコンソール出力は計測から除外
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            for (int i = 0; i < warmup; i++) {
+                body.run();
+            }
+            for (int i = 0; i < iterations; i++) {
+                long start = System.nanoTime();
+                body.run();
+                millis[i] = (System.nanoTime() - start) / 1e6;
+            }
+        } finally {
+            System.setOut(console);
+        }
+        return new Result(benchmark, n, f, millis);
+    }
+
+    private static <T> T quietly(Callable<T> task) throws Exception {
+        PrintStream console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return task.call();
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    private static void writeJson(File file, List<Result> results, List<String> analysisArgs, int warmup,
+                                  int iterations, long seed, int threads) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.println("{");
+            writer.printf("  \"timestamp\": \"%s\",\n",
+                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssXXX").format(new Date()));
+            writer.printf("  \"javaVersion\": \"%s\",\n", System.getProperty("java.version"));
+            writer.printf("  \"availableProcessors\": %d,\n", Runtime.getRuntime().availableProcessors());
+            writer.printf("  \"threads\": %d,\n", threads);
+            writer.printf("  \"distanceKernel\": \"%s\",\n", DistanceKernel.INSTANCE.description());
+            writer.printf("  \"warmupIterations\": %d,\n", warmup);
+            writer.printf("  \"measurementIterations\": %d,\n", iterations);
+            writer.printf("  \"seed\": %d,\n", seed);
+            writer.print("  \"analysisOptions\": [");
+            for (int i = 0; i < analysisArgs.size(); i++) {
+                writer.print((i > 0 ? ", " : "") + "\"" + analysisArgs.get(i).replace("\\", "\\\\").replace("\"", "\\\"") + "\"");
+            }
+            writer.println("],");
+            writer.println("  \"results\": [");
+            for (int r = 0; r < results.size(); r++) {
+                Result result = results.get(r);
+                StringBuilder samples = new StringBuilder();
+                for (int i = 0; i < result.millis.length; i++) {
+                    samples.append(i > 0 ? ", " : "").append(String.format(Locale.ROOT, "%.4f", result.millis[i]));
+                }
+                writer.printf(Locale.ROOT, "    {\"benchmark\": \"%s\", \"respondents\": %d, \"frameworks\": %d, "
+                        + "\"unit\": \"ms\", \"mean\": %.4f, \"stdDev\": %.4f, \"min\": %.4f, \"median\": %.4f, "
+                        + "\"max\": %.4f, \"samples\": [%s]}%s\n",
+                    result.benchmark, result.respondents, result.frameworks, result.mean(), result.stdDev(),
+                    result.percentile(0), result.percentile(50), result.percentile(100), samples,
+                    r < results.size() - 1 ? "," : "");
+            }
+            writer.println("  ]");
+            writer.println("}");
+        }
+    }
+}
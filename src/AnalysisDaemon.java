@@ -0,0 +1,332 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * 常駐分析サーバー
+ * JVM・Wekaのクラス読み込み・JITのウォームアップと読み込み済みデータを保持したまま、
+ * ローカルソケットまたはスプールディレクトリで受け付けたジョブを実行する
+ *
+ * ジョブはNextjsWekaAnalysisと同じ引数（--respondents, --targets など）で指定し、結果は通常どおり results/ と csv_data/ に出力する
+ * 互いに独立したジョブ（必要なステージが重ならないジョブ）は並行して実行し、重なるジョブはステージ単位のロックで順番に実行する
+ * ジョブごとのコンソール出力は output/daemon/<ジョブID>.log に保存する
+ * 並列処理のプールは起動時の --threads で作成して全ジョブで共有する（ジョブの引数に --threads は指定できない）
+ *
+ * 使い方: java AnalysisDaemon --port=7878 --spool=spool --max-jobs=2
+ * ソケット: 1行1ジョブ（引数を空白区切り）で送信すると、完了時に "ok <ID> ..." または "failed <ID> ..." を返す
+ *           "status" で実行状況、"shutdown" で実行中のジョブの完了後に停止
+ * スプール: *.job ファイル（引数を空白・改行区切り、#以降はコメント）を置くと実行し、
+ *           完了後に *.job.done / *.job.failed へ名前を変える
+ */
+public class AnalysisDaemon {
+
+    private static final String LOG_DIR = "output/daemon/";
+
+    /** 常駐中に同時に保持する読み込み済みデータの数 */
+    private static final int DEFAULT_RESIDENT_DATASETS = 8;
+
+    private final PrintStream console;
+    private final ExecutorService jobs;
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private volatile boolean stopping;
+
+    private AnalysisDaemon(PrintStream console, int maxJobs) {
+        this.console = console;
+        this.jobs = Executors.newFixedThreadPool(maxJobs);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = 7878;
+        File spool = null;
+        int maxJobs = 2;
+        int residentDatasets = DEFAULT_RESIDENT_DATASETS;
+        List<String> analysisArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "--port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "--spool":
+                    spool = new File(value);
+                    break;
+                case "--max-jobs":
+                    maxJobs = Integer.parseInt(value);
+                    break;
+                case "--resident-datasets":
+                    residentDatasets = Integer.parseInt(value);
+                    break;
+                default:
+                    analysisArgs.add(arg);
+            }
+        }
+        if (port <= 0 && spool == null) {
+            throw new IllegalArgumentException("--port または --spool のいずれかが必要です");
+        }
+        if (maxJobs < 1) {
+            throw new IllegalArgumentException("--max-jobs は1以上が必要です: " + maxJobs);
+        }
+
+        // 並列処理のプール（--threads）は全ジョブで共有する
+        NextjsWekaAnalysis.configure(AnalysisOptions.parse(analysisArgs.toArray(new String[0])));
+        int maxDatasets = residentDatasets;
+        NextjsWekaAnalysis.residentData = Collections.synchronizedMap(
+            new LinkedHashMap<String, NextjsWekaAnalysis.PreparedData>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, NextjsWekaAnalysis.PreparedData> eldest) {
+                    return size() > maxDatasets;
+                }
+            });
+        new File(LOG_DIR).mkdirs();
+        preloadClasses();
+
+        PrintStream console = ConsoleRouter.install();
+        AnalysisDaemon daemon = new AnalysisDaemon(console, maxJobs);
+        console.println("=== 常駐分析サーバー開始 ===");
+        console.println("同時実行ジョブ数: " + maxJobs + ", 並列処理スレッド数: " + NextjsWekaAnalysis.pool.getParallelism());
+
+        List<Thread> listeners = new ArrayList<>();
+        ServerSocket server = null;
+        if (port > 0) {
+            server = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+            console.println("ソケット待ち受け: " + server.getLocalSocketAddress());
+            ServerSocket listening = server;
+            listeners.add(start("daemon-socket", () -> daemon.acceptConnections(listening)));
+        }
+        if (spool != null) {
+            spool.mkdirs();
+            console.println("スプール監視: " + spool.getPath());
+            File watched = spool;
+            listeners.add(start("daemon-spool", () -> daemon.watchSpool(watched)));
+        }
+
+        synchronized (daemon) {
+            while (!daemon.stopping) {
+                daemon.wait();
+            }
+        }
+        if (server != null) {
+            server.close();
+        }
+        for (Thread listener : listeners) {
+            listener.interrupt();
+            listener.join();
+        }
+        daemon.jobs.shutdown();
+        daemon.jobs.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        NextjsWekaAnalysis.pool.shutdown();
+        console.println("=== 常駐分析サーバー停止 ===");
+    }
+
+    /**
+     * 分析で使うWekaのクラスを起動時に読み込んでおく（初回ジョブのクラス読み込みを避ける）
+     */
+    private static void preloadClasses() {
+        String[] classes = {
+            "weka.core.Instances", "weka.core.DenseInstance", "weka.core.EuclideanDistance",
+            "weka.core.converters.ArffSaver", "weka.clusterers.SimpleKMeans", "weka.clusterers.HierarchicalClusterer"
+        };
+        for (String name : classes) {
+            try {
+                Class.forName(name);
+            } catch (ClassNotFoundException e) {
+                System.out.println("クラスを読み込めません: " + name);
+            }
+        }
+    }
+
+    private interface Listener {
+        void run() throws Exception;
+    }
+
+    private static Thread start(String name, Listener listener) {
+        Thread thread = new Thread(() -> {
+            try {
+                listener.run();
+            } catch (InterruptedException | SocketException e) {
+                // 停止時
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, name);
+        thread.start();
+        return thread;
+    }
+
+    private synchronized void stop() {
+        stopping = true;
+        notifyAll();
+    }
+
+    /**
+     * ジョブを受け付けて実行キューに入れる（onCompleteには結果の1行を渡す、不要ならnull）
+     */
+    private Future<String> submit(String[] args, String origin, Consumer<String> onComplete) {
+        String id = String.format("job-%06d", sequence.incrementAndGet());
+        queued.incrementAndGet();
+        console.println("[ジョブ " + id + "] 受付 (" + origin + "): " + String.join(" ", args));
+        return jobs.submit(() -> {
+            queued.decrementAndGet();
+            running.incrementAndGet();
+            String result;
+            try {
+                result = runJob(id, args);
+            } finally {
+                running.decrementAndGet();
+            }
+            if (onComplete != null) {
+                onComplete.accept(result);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * 1ジョブを実行（コンソール出力はジョブのログファイルへ）
+     * 戻り値は結果の1行（"ok <ID> ..." / "failed <ID> ..."）
+     */
+    private String runJob(String id, String[] args) {
+        File log = new File(LOG_DIR + id + ".log");
+        long start = System.nanoTime();
+        String result;
+        try (PrintStream out = new PrintStream(new FileOutputStream(log), true, "UTF-8")) {
+            ConsoleRouter.route(out);
+            try {
+                NextjsWekaAnalysis.analyze(parseJobOptions(args));
+                result = String.format("ok %s %.2fs log=%s", id, (System.nanoTime() - start) / 1e9, log.getPath());
+            } catch (Exception e) {
+                e.printStackTrace(out);
+                result = String.format("failed %s %.2fs %s log=%s", id, (System.nanoTime() - start) / 1e9,
+                    String.valueOf(e.getMessage()).replace('\n', ' '), log.getPath());
+            } finally {
+                ConsoleRouter.reset();
+            }
+        } catch (IOException e) {
+            result = "failed " + id + " ログを作成できません: " + e.getMessage();
+        }
+        console.println("[ジョブ " + id + "] " + result);
+        return result;
+    }
+
+    /**
+     * ジョブの引数を解析（並列処理のプールは起動時の --threads で全ジョブ共有のため、ジョブごとの --threads は受け付けない）
+     */
+    private static AnalysisOptions parseJobOptions(String[] args) {
+        for (String arg : args) {
+            if (arg.equals("--threads") || arg.startsWith("--threads=")) {
+                throw new IllegalArgumentException("--threads はジョブごとに指定できません（起動時の --threads を全ジョブで共有）");
+            }
+        }
+        return AnalysisOptions.parse(args);
+    }
+
+    /**
+     * ソケット接続を受け付け、接続ごとに1スレッドで処理する
+     */
+    private void acceptConnections(ServerSocket server) throws IOException {
+        while (!stopping) {
+            Socket socket = server.accept();
+            Thread handler = new Thread(() -> handleConnection(socket), "daemon-connection");
+            handler.setDaemon(true);
+            handler.start();
+        }
+    }
+
+    private void handleConnection(Socket socket) {
+        try (Socket s = socket;
+             BufferedReader in = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.UTF_8));
+             PrintWriter out = new PrintWriter(new OutputStreamWriter(s.getOutputStream(), StandardCharsets.UTF_8), true)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) continue;
+                if (line.equals("status")) {
+                    out.println("status running=" + running.get() + " queued=" + queued.get()
+                        + " resident=" + NextjsWekaAnalysis.residentData.size());
+                } else if (line.equals("shutdown")) {
+                    out.println("stopping");
+                    stop();
+                    return;
+                } else if (stopping) {
+                    out.println("failed 停止中のため受け付けません");
+                } else {
+                    Future<String> job = submit(line.split("\\s+"), "socket", null);
+                    out.println("accepted");
+                    try {
+                        out.println(job.get());
+                    } catch (ExecutionException e) {
+                        out.println("failed " + e.getCause());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            console.println("接続エラー: " + e.getMessage());
+        }
+    }
+
+    /**
+     * スプールディレクトリの *.job を監視（起動時に残っていたファイルも処理する）
+     */
+    private void watchSpool(File dir) throws Exception {
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            dir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (!stopping) {
+                File[] files = dir.listFiles((d, name) -> name.endsWith(".job"));
+                if (files != null) {
+                    Arrays.sort(files);
+                    for (File file : files) {
+                        claim(file);
+                    }
+                }
+                // イベントを取りこぼしても一定間隔で再走査する
+                WatchKey key = watcher.poll(1, TimeUnit.SECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        }
+    }
+
+    /**
+     * ジョブファイルを *.job.running に改名して実行（改名に失敗した場合は他で処理中とみなす）
+     */
+    private void claim(File file) throws IOException {
+        File claimed = new File(file.getPath() + ".running");
+        if (!file.renameTo(claimed)) {
+            return;
+        }
+        List<String> args = new ArrayList<>();
+        for (String line : Files.readAllLines(claimed.toPath(), StandardCharsets.UTF_8)) {
+            int comment = line.indexOf('#');
+            String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (!content.isEmpty()) {
+                args.addAll(Arrays.asList(content.split("\\s+")));
+            }
+        }
+        // 完了時に結果の1行を追記して改名する（スプール監視スレッドは完了を待たない）
+        submit(args.toArray(new String[0]), "spool " + file.getName(), result -> {
+            File finished = new File(file.getPath() + (result.startsWith("ok") ? ".done" : ".failed"));
+            try {
+                Files.write(claimed.toPath(), ("\n# " + result + "\n").getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                console.println("スプールファイルに結果を書き込めません: " + e.getMessage());
+            }
+            if (!claimed.renameTo(finished)) {
+                console.println("スプールファイルを改名できません: " + claimed.getPath());
+            }
+        });
+    }
+}
@@ -0,0 +1,243 @@
+import java.io.File;
+
+/**
+ * コマンドライン引数で指定する分析オプション
+ * 形式: --名前=値
+ */
+public class AnalysisOptions {
+
+    /** 回答者単位の生データ（未指定時は集計済みの2024年データを使用） */
+    File respondentsFile;
+
+    /** 集計済み比率データのディレクトリ（カテゴリ指定時の入力と、継続率の時系列に使用） */
+    File surveyDirectory = new File(SurveyRatios.DEFAULT_DIRECTORY);
+
+    /** 集計済み比率データから分析するカテゴリ（例: state_of_js/meta_frameworks、未指定時は組み込みデータ） */
+    String surveyCategory;
+
+    /** 集計済み比率データから分析する年（未指定時はカテゴリの最新年） */
+    int surveyYear;
+
+    /** output/ results/ csv_data/ weka/ を作成するディレクトリ（未指定時は作業ディレクトリ） */
+    File outputRoot;
+
+    /** ストリーミング読み込みのチャンク行数 */
+    int chunkSize = 100_000;
+
+    /** 並列処理のスレッド数 */
+    int threads = Runtime.getRuntime().availableProcessors();
+
+    /** エルボー探索でK値ごとに試す乱数シード数 */
+    int elbowSeeds = 10;
+
+    /** 最適K値の選択基準（sse / silhouette / gap） */
+    String elbowCriterion = "sse";
+
+    /** Gap統計量の参照データ数 */
+    int gapReferences = 10;
+
+    /** K-meansエンジン（lloyd: Hamerly境界付きLloyd法 / weka: Weka SimpleKMeans / minibatch） */
+    String kmeansEngine = "lloyd";
+
+    /** ミニバッチK-meansのバッチサイズ */
+    int batchSize = 1024;
+
+    /** ミニバッチK-meansの更新回数 */
+    int miniBatchIterations = 100;
+
+    /** 階層クラスタリングエンジン（weka / nnchain） */
+    String hierarchicalEngine = "weka";
+
+    /** デンドログラムを切断するクラスタ数 */
+    int hierarchicalK = 4;
+
+    /** PCAの手法（auto / covariance / randomized） */
+    String pcaMethod = "auto";
+
+    /** ランダム化SVDで求める主成分数 */
+    int pcaComponents = 10;
+
+    /** Pearsonに加えてSpearman順位相関も出力する */
+    boolean spearman;
+
+    /** 回答者ストリームから相関行列を求める数値列（未指定時は算出しない） */
+    String[] correlationColumns;
+
+    /** 回答者ストリームから矛盾指数キューブを求めるセグメント列（未指定時は算出しない） */
+    String[] segmentColumns;
+
+    /** クラスタ安定性評価の再標本化方法（subsample / bootstrap） */
+    String stabilityMode = "subsample";
+
+    /** サブサンプリングの抽出率 */
+    double stabilityFraction = 0.8;
+
+    /** クラスタ安定性評価の再標本数 */
+    int stabilityReplicates = 1000;
+
+    /** K-means・階層クラスタリングを重み付きコアセット上で近似実行する */
+    boolean approximate;
+
+    /** コアセットの抽出回数（0の場合は誤差の上限から決める） */
+    int coresetSize;
+
+    /** コアセットのSSE推定の誤差の上限ε */
+    double coresetEpsilon = 0.1;
+
+    /** 近似実行後に全データで厳密にも実行し、SSEを比較する */
+    boolean approximateValidate;
+
+    /** K-means・階層クラスタリングをBIRCHのCF木で要約した部分クラスタ上で実行する */
+    boolean birch;
+
+    /** CF木の部分クラスタの半径の初期閾値（0の場合は要約数が上限を超えてから自動で上げる） */
+    double birchThreshold;
+
+    /** CF木の葉の要約数の上限（メモリ使用量の上限） */
+    int birchMaxEntries = 5000;
+
+    /** 準備済み・標準化済みデータの列指向キャッシュを使用する */
+    boolean cache = true;
+
+    /** CSVデータセットをgzip圧縮（.csv.gz）で出力する */
+    boolean gzipCsv;
+
+    /** 実行するステージ（未指定時は全ステージ、依存ステージは自動的に含まれる） */
+    String[] targets;
+
+    /**
+     * 引数を解析
+     */
+    public static AnalysisOptions parse(String[] args) {
+        AnalysisOptions options = new AnalysisOptions();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("不明な引数: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg.substring(2) : arg.substring(2, eq);
+            String value = eq < 0 ? null : arg.substring(eq + 1);
+            switch (name) {
+                case "respondents":
+                    options.respondentsFile = new File(require(name, value));
+                    break;
+                case "surveys":
+                    options.surveyDirectory = new File(require(name, value));
+                    break;
+                case "category":
+                    options.surveyCategory = require(name, value);
+                    break;
+                case "year":
+                    options.surveyYear = Integer.parseInt(require(name, value));
+                    break;
+                case "output-root":
+                    options.outputRoot = new File(require(name, value));
+                    break;
+                case "chunk-size":
+                    options.chunkSize = Integer.parseInt(require(name, value));
+                    break;
+                case "threads":
+                    options.threads = Integer.parseInt(require(name, value));
+                    break;
+                case "elbow-seeds":
+                    options.elbowSeeds = Integer.parseInt(require(name, value));
+                    break;
+                case "elbow-criterion":
+                    options.elbowCriterion = oneOf(name, require(name, value), "sse", "silhouette", "gap");
+                    break;
+                case "gap-references":
+                    options.gapReferences = Integer.parseInt(require(name, value));
+                    break;
+                case "kmeans":
+                    options.kmeansEngine = oneOf(name, require(name, value), "weka", "lloyd", "minibatch");
+                    break;
+                case "batch-size":
+                    options.batchSize = Integer.parseInt(require(name, value));
+                    break;
+                case "minibatch-iterations":
+                    options.miniBatchIterations = Integer.parseInt(require(name, value));
+                    break;
+                case "hierarchical":
+                    options.hierarchicalEngine = oneOf(name, require(name, value), "weka", "nnchain");
+                    break;
+                case "hierarchical-k":
+                    options.hierarchicalK = Integer.parseInt(require(name, value));
+                    break;
+                case "pca":
+                    options.pcaMethod = oneOf(name, require(name, value), "auto", "covariance", "randomized");
+                    break;
+                case "pca-components":
+                    options.pcaComponents = Integer.parseInt(require(name, value));
+                    break;
+                case "spearman":
+                    options.spearman = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "correlation-columns":
+                    options.correlationColumns = require(name, value).split(",");
+                    break;
+                case "segment-columns":
+                    options.segmentColumns = require(name, value).split(",");
+                    break;
+                case "stability":
+                    options.stabilityMode = oneOf(name, require(name, value), "subsample", "bootstrap");
+                    break;
+                case "stability-fraction":
+                    options.stabilityFraction = Double.parseDouble(require(name, value));
+                    break;
+                case "stability-replicates":
+                    options.stabilityReplicates = Integer.parseInt(require(name, value));
+                    break;
+                case "approximate":
+                    options.approximate = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "coreset-size":
+                    options.coresetSize = Integer.parseInt(require(name, value));
+                    break;
+                case "coreset-epsilon":
+                    options.coresetEpsilon = Double.parseDouble(require(name, value));
+                    break;
+                case "approximate-validate":
+                    options.approximateValidate = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "birch":
+                    options.birch = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "birch-threshold":
+                    options.birchThreshold = Double.parseDouble(require(name, value));
+                    break;
+                case "birch-max-entries":
+                    options.birchMaxEntries = Integer.parseInt(require(name, value));
+                    break;
+                case "no-cache":
+                    options.cache = false;
+                    break;
+                case "gzip-csv":
+                    options.gzipCsv = value == null || Boolean.parseBoolean(value);
+                    break;
+                case "targets":
+                    options.targets = require(name, value).split(",");
+                    break;
+                default:
+                    throw new IllegalArgumentException("不明なオプション: --" + name);
+            }
+        }
+        if (options.approximate && options.birch) {
+            throw new IllegalArgumentException("--approximate と --birch は同時に指定できません");
+        }
+        return options;
+    }
+
+    private static String require(String name, String value) {
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("--" + name + " には値が必要です");
+        }
+        return value;
+    }
+
+    private static String oneOf(String name, String value, String... allowed) {
+        for (String a : allowed) {
+            if (a.equals(value)) return value;
+        }
+        throw new IllegalArgumentException("--" + name + " の値は " + String.join(" / ", allowed) + " のいずれか: " + value);
+    }
+}
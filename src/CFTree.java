@@ -0,0 +1,367 @@
+import java.util.*;
+
+/**
+ * BIRCHのクラスタリング特徴木（CF木）による事前クラスタリング（Zhang et al. 1996）
+ * 行を先頭から1回だけ走査し、近い行を部分クラスタの要約（件数N・線形和LS・二乗和SS）にまとめる
+ * 葉の要約数が上限を超えたら半径の閾値を上げて要約を入れ直すため、行数によらずメモリ使用量は上限内に収まる
+ *
+ * 要約の中心（LS/N）をNの重み付きの点とすれば、Ward法の結合コストは元の行で計算した場合と同じ式になり、
+ * 部分クラスタ単位の割り当てのSSEは、重み付きSSEに部分クラスタ内の平方和（SS - ||LS||²/N）を足したものに等しい
+ */
+public class CFTree {
+
+    /** 非葉ノードの子の数の上限 */
+    static final int BRANCHING = 50;
+    /** 葉ノードの要約数の上限 */
+    static final int LEAF_CAPACITY = 50;
+    /** 入れ直すときに閾値を上げる最小の倍率 */
+    private static final double THRESHOLD_GROWTH = 1.25;
+
+    /**
+     * クラスタリング特徴（部分クラスタの要約）
+     */
+    private static final class Feature {
+        double n;
+        final double[] ls;
+        double ss;
+        /** 最初に追加された行（デンドログラムの葉のラベルに使う） */
+        int row;
+
+        Feature(int dims) {
+            this.ls = new double[dims];
+        }
+
+        void set(double[] values, int offset, int row) {
+            double squares = 0;
+            for (int j = 0; j < ls.length; j++) {
+                double v = values[offset + j];
+                ls[j] = v;
+                squares += v * v;
+            }
+            this.n = 1;
+            this.ss = squares;
+            this.row = row;
+        }
+
+        Feature copy() {
+            Feature copy = new Feature(ls.length);
+            copy.add(this);
+            copy.row = row;
+            return copy;
+        }
+
+        void add(Feature other) {
+            n += other.n;
+            for (int j = 0; j < ls.length; j++) {
+                ls[j] += other.ls[j];
+            }
+            ss += other.ss;
+        }
+
+        /** 中心間の二乗距離 */
+        double centroidDistance(Feature other) {
+            double sum = 0;
+            for (int j = 0; j < ls.length; j++) {
+                double diff = ls[j] / n - other.ls[j] / other.n;
+                sum += diff * diff;
+            }
+            return sum;
+        }
+
+        /** 結合した場合の半径（中心からの二乗平均平方根距離） */
+        double mergedRadius(Feature other) {
+            double total = n + other.n;
+            double centroidNorm = 0;
+            for (int j = 0; j < ls.length; j++) {
+                double c = (ls[j] + other.ls[j]) / total;
+                centroidNorm += c * c;
+            }
+            return Math.sqrt(Math.max(0, (ss + other.ss) / total - centroidNorm));
+        }
+
+        /** 部分クラスタ内の平方和 */
+        double sse() {
+            double norm = 0;
+            for (double v : ls) {
+                norm += v * v;
+            }
+            return Math.max(0, ss - norm / n);
+        }
+    }
+
+    private static final class Node {
+        final boolean leaf;
+        /** 葉では部分クラスタの要約、非葉では各子ノードの要約 */
+        final List<Feature> features = new ArrayList<>();
+        final List<Node> children;
+
+        Node(boolean leaf) {
+            this.leaf = leaf;
+            this.children = leaf ? null : new ArrayList<>();
+        }
+    }
+
+    /**
+     * 葉の要約の一覧（中心・件数・代表行）
+     */
+    static final class Summary {
+        /** 部分クラスタの中心 */
+        final DataMatrix points;
+        /** 各部分クラスタの件数 */
+        final double[] weights;
+        /** 各部分クラスタに最初に追加された行 */
+        final int[] rows;
+        /** 部分クラスタ内の平方和の合計 */
+        final double internalSse;
+        /** 入力行数 */
+        final long inputRows;
+        /** 最終的な半径の閾値 */
+        final double threshold;
+        /** 閾値を上げて入れ直した回数 */
+        final int rebuilds;
+
+        private Summary(DataMatrix points, double[] weights, int[] rows, double internalSse, long inputRows,
+                        double threshold, int rebuilds) {
+            this.points = points;
+            this.weights = weights;
+            this.rows = rows;
+            this.internalSse = internalSse;
+            this.inputRows = inputRows;
+            this.threshold = threshold;
+            this.rebuilds = rebuilds;
+        }
+
+        public int size() {
+            return points.rows;
+        }
+    }
+
+    private final int dims;
+    private final int maxEntries;
+    private final Feature scratch;
+    private double threshold;
+    private Node root;
+    private int entries;
+    private int rebuilds;
+    private long inputRows;
+
+    /**
+     * thresholdは部分クラスタの半径の初期閾値（0の場合は同一の行だけをまとめ、上限を超えてから上げる）
+     */
+    CFTree(int dims, double threshold, int maxEntries) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("CF木の半径の閾値は0以上が必要です: " + threshold);
+        }
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("CF木の要約数の上限は1以上が必要です: " + maxEntries);
+        }
+        this.dims = dims;
+        this.threshold = threshold;
+        this.maxEntries = maxEntries;
+        this.scratch = new Feature(dims);
+        this.root = new Node(true);
+    }
+
+    /**
+     * 行列の全行を1回の走査で要約
+     */
+    static Summary build(DataMatrix data, double threshold, int maxEntries) {
+        CFTree tree = new CFTree(data.cols, threshold, maxEntries);
+        for (int i = 0; i < data.rows; i++) {
+            tree.add(data.values, i * data.cols, i);
+        }
+        return tree.summarize();
+    }
+
+    /**
+     * 1行を追加（valuesのoffsetから列数分を読む、rowは代表行として記録する行番号）
+     */
+    void add(double[] values, int offset, int row) {
+        scratch.set(values, offset, row);
+        insert(scratch);
+        inputRows++;
+        while (entries > maxEntries) {
+            rebuild();
+        }
+    }
+
+    private void insert(Feature feature) {
+        Node sibling = insert(root, feature);
+        if (sibling != null) {
+            Node parent = new Node(false);
+            parent.features.add(summarize(root));
+            parent.children.add(root);
+            parent.features.add(summarize(sibling));
+            parent.children.add(sibling);
+            root = parent;
+        }
+    }
+
+    /**
+     * 最も近い要約をたどって追加（ノードを分割した場合は新しい兄弟ノードを返す）
+     */
+    private Node insert(Node node, Feature feature) {
+        int closest = closest(node.features, feature);
+        if (node.leaf) {
+            if (closest >= 0 && node.features.get(closest).mergedRadius(feature) <= threshold) {
+                node.features.get(closest).add(feature);
+                return null;
+            }
+            node.features.add(feature.copy());
+            entries++;
+            return node.features.size() > LEAF_CAPACITY ? split(node) : null;
+        }
+        Node child = node.children.get(closest);
+        Node sibling = insert(child, feature);
+        if (sibling == null) {
+            node.features.get(closest).add(feature);
+            return null;
+        }
+        node.features.set(closest, summarize(child));
+        node.features.add(summarize(sibling));
+        node.children.add(sibling);
+        return node.features.size() > BRANCHING ? split(node) : null;
+    }
+
+    private static int closest(List<Feature> features, Feature feature) {
+        int best = -1;
+        double bestDistance = Double.POSITIVE_INFINITY;
+        for (int i = 0; i < features.size(); i++) {
+            double d = features.get(i).centroidDistance(feature);
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 最も離れた2つの要約を核に、各要約を近い方へ振り分けて2つのノードに分割
+     */
+    private static Node split(Node node) {
+        List<Feature> features = new ArrayList<>(node.features);
+        List<Node> children = node.leaf ? null : new ArrayList<>(node.children);
+        int a = 0;
+        int b = 1;
+        double farthest = -1;
+        for (int i = 0; i < features.size(); i++) {
+            for (int j = i + 1; j < features.size(); j++) {
+                double d = features.get(i).centroidDistance(features.get(j));
+                if (d > farthest) {
+                    farthest = d;
+                    a = i;
+                    b = j;
+                }
+            }
+        }
+        Node sibling = new Node(node.leaf);
+        node.features.clear();
+        if (children != null) {
+            node.children.clear();
+        }
+        for (int i = 0; i < features.size(); i++) {
+            Feature f = features.get(i);
+            Node target = i == a ? node
+                : i == b ? sibling
+                : f.centroidDistance(features.get(a)) <= f.centroidDistance(features.get(b)) ? node : sibling;
+            target.features.add(f);
+            if (children != null) {
+                target.children.add(children.get(i));
+            }
+        }
+        return sibling;
+    }
+
+    private Feature summarize(Node node) {
+        Feature sum = new Feature(dims);
+        for (Feature f : node.features) {
+            sum.add(f);
+        }
+        sum.row = node.features.isEmpty() ? -1 : node.features.get(0).row;
+        return sum;
+    }
+
+    /**
+     * 閾値を上げ、葉の要約を新しい木へ入れ直す
+     * 新しい閾値は同じ葉で最も近い要約と結合した場合の半径の中央値（少なくとも現在の閾値の1.25倍）
+     */
+    private void rebuild() {
+        List<Node> leaves = new ArrayList<>();
+        collectLeaves(root, leaves);
+        List<Double> radii = new ArrayList<>();
+        for (Node leaf : leaves) {
+            for (Feature f : leaf.features) {
+                int nearest = -1;
+                double nearestDistance = Double.POSITIVE_INFINITY;
+                for (int i = 0; i < leaf.features.size(); i++) {
+                    Feature other = leaf.features.get(i);
+                    if (other == f) continue;
+                    double d = f.centroidDistance(other);
+                    if (d < nearestDistance) {
+                        nearestDistance = d;
+                        nearest = i;
+                    }
+                }
+                if (nearest >= 0) {
+                    radii.add(f.mergedRadius(leaf.features.get(nearest)));
+                }
+            }
+        }
+        Collections.sort(radii);
+        double median = radii.isEmpty() ? 0 : radii.get(radii.size() / 2);
+        threshold = Math.max(threshold * THRESHOLD_GROWTH, median);
+        if (threshold == 0) {
+            threshold = Double.MIN_NORMAL;
+        }
+
+        root = new Node(true);
+        entries = 0;
+        rebuilds++;
+        for (Node leaf : leaves) {
+            for (Feature f : leaf.features) {
+                insert(f);
+            }
+        }
+    }
+
+    private static void collectLeaves(Node root, List<Node> leaves) {
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            Node node = stack.pop();
+            if (node.leaf) {
+                leaves.add(node);
+            } else {
+                for (int i = node.children.size() - 1; i >= 0; i--) {
+                    stack.push(node.children.get(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * 現在の葉の要約を取り出す（木の走査順）
+     */
+    Summary summarize() {
+        List<Node> leaves = new ArrayList<>();
+        collectLeaves(root, leaves);
+        DataMatrix points = new DataMatrix(entries, dims);
+        double[] weights = new double[entries];
+        int[] rows = new int[entries];
+        double internalSse = 0;
+        int p = 0;
+        for (Node leaf : leaves) {
+            for (Feature f : leaf.features) {
+                for (int j = 0; j < dims; j++) {
+                    points.values[p * dims + j] = f.ls[j] / f.n;
+                }
+                weights[p] = f.n;
+                rows[p] = f.row;
+                internalSse += f.sse();
+                p++;
+            }
+        }
+        return new Summary(points, weights, rows, internalSse, inputRows, threshold, rebuilds);
+    }
+}
@@ -0,0 +1,292 @@
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ブートストラップ / サブサンプリングによるクラスタ安定性評価
+ * 標準化済み行列を読み取り専用で共有し、再標本化したデータでのクラスタリングをプール上で多数回実行して
+ * 基準の割り当て（1回の実行結果）と比較する
+ *
+ * 指標（再標本に含まれたインスタンスのみで比較）:
+ * - 調整ランド指数（ARI）: 基準の割り当てとの一致度の分布
+ * - 同時割り当て頻度: 2インスタンスが同時に抽出された回のうち同じクラスタになった割合
+ * - クラスタ別Jaccard安定性: 基準クラスタと最も重なる再標本クラスタのJaccard係数の平均
+ *   （目安: 0.75以上で安定、0.5以下は解消しやすいクラスタ）
+ *
+ * 各再標本は番号から決まるシードで抽出・クラスタリングするため、スレッド数によらず結果は同じ
+ */
+public class ClusterStability {
+
+    /** 同時割り当て頻度を集計するインスタンス数の上限（ペア数の2乗メモリを抑えるため） */
+    static final int CO_ASSIGNMENT_LIMIT = 2000;
+
+    /**
+     * 再標本に対するクラスタリング（戻り値は標本の行ごとのクラスタ番号）
+     */
+    public interface Clusterer {
+        int[] cluster(DataMatrix sample, long seed) throws Exception;
+    }
+
+    /**
+     * 安定性評価の結果
+     */
+    public static final class Result implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        final int replicates;
+        final int k;
+        /** 再標本ごとのARI */
+        final double[] ari;
+        /** 基準クラスタ別のJaccard係数の合計と、そのクラスタが標本に現れた回数 */
+        final double[] jaccardSum;
+        final int[] jaccardCount;
+        /** 圧縮形式（i < j）のペア別の同時抽出回数と同一クラスタ回数（上限超過時はnull） */
+        final int[] cosampled;
+        final int[] together;
+        final int n;
+
+        Result(int n, int replicates, int k, boolean coAssignment) {
+            this.n = n;
+            this.replicates = replicates;
+            this.k = k;
+            this.ari = new double[replicates];
+            this.jaccardSum = new double[k];
+            this.jaccardCount = new int[k];
+            long pairs = (long) n * (n - 1) / 2;
+            this.cosampled = coAssignment ? new int[(int) pairs] : null;
+            this.together = coAssignment ? new int[(int) pairs] : null;
+        }
+
+        public double meanAri() {
+            double sum = 0;
+            for (double a : ari) sum += a;
+            return sum / replicates;
+        }
+
+        public double stdDevAri() {
+            if (replicates < 2) return 0;
+            double mean = meanAri();
+            double sum = 0;
+            for (double a : ari) sum += (a - mean) * (a - mean);
+            return Math.sqrt(sum / (replicates - 1));
+        }
+
+        public double ariPercentile(double p) {
+            double[] sorted = ari.clone();
+            Arrays.sort(sorted);
+            return sorted[(int) Math.min(sorted.length - 1, Math.round(p / 100 * (sorted.length - 1)))];
+        }
+
+        /**
+         * 基準クラスタのJaccard安定性（標本に1度も現れなかった場合はNaN）
+         */
+        public double jaccard(int cluster) {
+            return jaccardCount[cluster] == 0 ? Double.NaN : jaccardSum[cluster] / jaccardCount[cluster];
+        }
+
+        public boolean hasCoAssignment() {
+            return cosampled != null;
+        }
+
+        /**
+         * インスタンスi, jの同時割り当て頻度（同時に抽出されなかった場合はNaN）
+         */
+        public double coAssignment(int i, int j) {
+            if (i == j) return 1.0;
+            int p = pairIndex(Math.min(i, j), Math.max(i, j), n);
+            return cosampled[p] == 0 ? Double.NaN : (double) together[p] / cosampled[p];
+        }
+    }
+
+    private final DataMatrix data;
+    private final int[] reference;
+    private final int k;
+    private final boolean bootstrap;
+    private final double fraction;
+
+    /**
+     * @param reference 基準の割り当て（0..k-1）
+     * @param bootstrap trueで復元抽出（n件）、falseで非復元抽出（n × fraction件）
+     */
+    public ClusterStability(DataMatrix data, int[] reference, boolean bootstrap, double fraction) {
+        if (reference.length != data.rows) {
+            throw new IllegalArgumentException("割り当て数がインスタンス数と一致しません: " + reference.length);
+        }
+        if (!bootstrap && (fraction <= 0 || fraction > 1)) {
+            throw new IllegalArgumentException("サブサンプリングの抽出率は0より大きく1以下: " + fraction);
+        }
+        this.data = data;
+        this.reference = reference;
+        this.k = Arrays.stream(reference).max().orElse(-1) + 1;
+        this.bootstrap = bootstrap;
+        this.fraction = fraction;
+    }
+
+    /**
+     * 再標本をreplicates回クラスタリングして評価
+     * ワーカーごとに未処理の再標本番号を順に取り出すため、処理時間のばらつきがあっても負荷は偏らない
+     */
+    public Result run(Clusterer clusterer, int replicates, long seed, ForkJoinPool pool) throws Exception {
+        if (replicates < 1) {
+            throw new IllegalArgumentException("再標本数は1以上が必要です: " + replicates);
+        }
+        int n = data.rows;
+        Result result = new Result(n, replicates, k, n <= CO_ASSIGNMENT_LIMIT);
+        AtomicInteger next = new AtomicInteger();
+        int workers = Math.min(pool.getParallelism(), replicates);
+        List<Callable<Partial>> tasks = new ArrayList<>();
+        for (int w = 0; w < workers; w++) {
+            tasks.add(() -> {
+                Partial partial = new Partial(result);
+                for (int r; (r = next.getAndIncrement()) < replicates; ) {
+                    partial.replicate(r, clusterer, seed + r);
+                }
+                return partial;
+            });
+        }
+        for (Future<Partial> future : pool.invokeAll(tasks)) {
+            future.get().mergeInto(result);
+        }
+        return result;
+    }
+
+    /**
+     * ワーカーごとの部分集計（ARIは再標本番号の位置に直接書き込む）
+     */
+    private final class Partial {
+        private final Result result;
+        private final double[] jaccardSum = new double[k];
+        private final int[] jaccardCount = new int[k];
+        private final int[] cosampled;
+        private final int[] together;
+        // 再標本ごとに再利用する作業領域
+        private final int[] drawn;
+        private final int[] label;
+        private final int[] members;
+
+        Partial(Result result) {
+            this.result = result;
+            this.cosampled = result.cosampled == null ? null : new int[result.cosampled.length];
+            this.together = result.together == null ? null : new int[result.together.length];
+            this.drawn = new int[data.rows];
+            this.label = new int[data.rows];
+            this.members = new int[data.rows];
+        }
+
+        void replicate(int r, Clusterer clusterer, long seed) throws Exception {
+            int n = data.rows;
+            SplittableRandom random = new SplittableRandom(seed);
+            int size = bootstrap ? n : Math.min(n, Math.max(2, (int) Math.round(n * fraction)));
+            int[] rows = new int[size];
+            if (bootstrap) {
+                for (int i = 0; i < size; i++) {
+                    rows[i] = random.nextInt(n);
+                }
+            } else {
+                // 部分的なFisher-Yatesで非復元抽出
+                int[] order = new int[n];
+                for (int i = 0; i < n; i++) order[i] = i;
+                for (int i = 0; i < size; i++) {
+                    int j = i + random.nextInt(n - i);
+                    int t = order[i];
+                    order[i] = order[j];
+                    order[j] = t;
+                    rows[i] = order[i];
+                }
+            }
+            DataMatrix sample = new DataMatrix(size, data.cols, new double[size * data.cols]);
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(data.values, rows[i] * data.cols, sample.values, i * data.cols, data.cols);
+            }
+            int[] labels = clusterer.cluster(sample, seed);
+
+            // 重複して抽出されたインスタンスは最初の出現のクラスタで比較する
+            Arrays.fill(drawn, 0);
+            int m = 0;
+            int kr = 0;
+            for (int i = 0; i < size; i++) {
+                int row = rows[i];
+                if (drawn[row]++ > 0) continue;
+                label[row] = labels[i];
+                members[m++] = row;
+                kr = Math.max(kr, labels[i] + 1);
+            }
+
+            long[] table = new long[k * kr];
+            long[] refCount = new long[k];
+            long[] repCount = new long[kr];
+            for (int i = 0; i < m; i++) {
+                int row = members[i];
+                table[reference[row] * kr + label[row]]++;
+                refCount[reference[row]]++;
+                repCount[label[row]]++;
+            }
+            result.ari[r] = adjustedRandIndex(table, refCount, repCount, m);
+            for (int c = 0; c < k; c++) {
+                if (refCount[c] == 0) continue;
+                double best = 0;
+                for (int b = 0; b < kr; b++) {
+                    long overlap = table[c * kr + b];
+                    if (overlap > 0) {
+                        best = Math.max(best, (double) overlap / (refCount[c] + repCount[b] - overlap));
+                    }
+                }
+                jaccardSum[c] += best;
+                jaccardCount[c]++;
+            }
+
+            if (cosampled != null) {
+                Arrays.sort(members, 0, m);
+                for (int a = 0; a < m; a++) {
+                    int i = members[a];
+                    int base = pairIndex(i, i + 1, n) - (i + 1);
+                    for (int b = a + 1; b < m; b++) {
+                        int j = members[b];
+                        cosampled[base + j]++;
+                        if (label[i] == label[j]) together[base + j]++;
+                    }
+                }
+            }
+        }
+
+        void mergeInto(Result result) {
+            for (int c = 0; c < k; c++) {
+                result.jaccardSum[c] += jaccardSum[c];
+                result.jaccardCount[c] += jaccardCount[c];
+            }
+            if (cosampled != null) {
+                for (int p = 0; p < cosampled.length; p++) {
+                    result.cosampled[p] += cosampled[p];
+                    result.together[p] += together[p];
+                }
+            }
+        }
+    }
+
+    /**
+     * 分割表から調整ランド指数を算出（両方とも1クラスタなど期待値と最大値が一致する場合は1）
+     */
+    static double adjustedRandIndex(long[] table, long[] rowSums, long[] colSums, long n) {
+        double index = 0;
+        for (long v : table) index += pairs(v);
+        double rows = 0;
+        for (long v : rowSums) rows += pairs(v);
+        double cols = 0;
+        for (long v : colSums) cols += pairs(v);
+        double expected = n < 2 ? 0 : rows * cols / pairs(n);
+        double max = (rows + cols) / 2;
+        return max == expected ? 1.0 : (index - expected) / (max - expected);
+    }
+
+    private static double pairs(long v) {
+        return v * (v - 1) / 2.0;
+    }
+
+    /**
+     * 圧縮形式でのペア(i, j)（i < j）の位置
+     */
+    static int pairIndex(int i, int j, int n) {
+        return (int) ((long) i * (2L * n - i - 1) / 2 + (j - i - 1));
+    }
+}
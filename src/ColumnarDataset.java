@@ -0,0 +1,249 @@
+import weka.core.*;
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * 列指向バイナリ形式のデータセットキャッシュ
+ * ヘッダー（属性メタデータ・入力キー・内容ハッシュ）の後に、属性ごとのdouble列を連続して格納する
+ * 読み込み時はファイルをメモリマップするため、テキストARFF/CSVの再解析なしで即座に利用できる
+ *
+ * 形式（リトルエンディアン）:
+ * magic "CSFC", version, 入力キー, リレーション名, 行数, 属性数,
+ * 属性ごとに [名前, 種別(0=数値/1=名義), 名義値一覧], SHA-256内容ハッシュ(32バイト),
+ * 8バイト境界までの詰め物, 列データ（double × 行数 × 属性数）
+ */
+public final class ColumnarDataset {
+
+    private static final int MAGIC = 0x43534643; // "CSFC"
+    private static final int VERSION = 1;
+    private static final int HASH_BYTES = 32;
+    private static final byte NUMERIC = 0;
+    private static final byte NOMINAL = 1;
+
+    final String sourceKey;
+    final String relationName;
+    final int numRows;
+    final String[] attributeNames;
+    /** 名義属性の値一覧（数値属性はnull） */
+    final String[][] nominalValues;
+    final byte[] contentHash;
+    private final DoubleBuffer[] columns;
+
+    private ColumnarDataset(String sourceKey, String relationName, int numRows, String[] attributeNames,
+                            String[][] nominalValues, byte[] contentHash, DoubleBuffer[] columns) {
+        this.sourceKey = sourceKey;
+        this.relationName = relationName;
+        this.numRows = numRows;
+        this.attributeNames = attributeNames;
+        this.nominalValues = nominalValues;
+        this.contentHash = contentHash;
+        this.columns = columns;
+    }
+
+    /**
+     * Instancesを列指向形式で書き出し、内容ハッシュ（16進）を返す
+     * sourceKeyには元データを識別する文字列（ファイルパスと更新日時など）を指定する
+     */
+    public static String write(Instances data, String sourceKey, File file) throws Exception {
+        int rows = data.numInstances();
+        int numAttributes = data.numAttributes();
+
+        // 内容ハッシュ（属性構成 + 全列の値）
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream attributesOut = new DataOutputStream(headerBytes);
+        for (int a = 0; a < numAttributes; a++) {
+            Attribute attribute = data.attribute(a);
+            writeString(attributesOut, attribute.name());
+            attributesOut.writeByte(attribute.isNominal() ? NOMINAL : NUMERIC);
+            if (attribute.isNominal()) {
+                attributesOut.writeInt(Integer.reverseBytes(attribute.numValues()));
+                for (int v = 0; v < attribute.numValues(); v++) {
+                    writeString(attributesOut, attribute.value(v));
+                }
+            }
+        }
+        attributesOut.flush();
+        byte[] attributeBytes = headerBytes.toByteArray();
+        digest.update(attributeBytes);
+        ByteBuffer block = ByteBuffer.allocate(8 * 4096).order(ByteOrder.LITTLE_ENDIAN);
+        for (int a = 0; a < numAttributes; a++) {
+            for (int i = 0; i < rows; i++) {
+                if (!block.hasRemaining()) {
+                    digest.update(block.array(), 0, block.position());
+                    block.clear();
+                }
+                block.putDouble(data.instance(i).value(a));
+            }
+        }
+        digest.update(block.array(), 0, block.position());
+        byte[] hash = digest.digest();
+
+        ByteBuffer header = ByteBuffer.allocate(64 + attributeBytes.length + HASH_BYTES
+                + 4 * (sourceKey.length() + data.relationName().length()) + 8)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION);
+        putString(header, sourceKey);
+        putString(header, data.relationName());
+        header.putInt(rows).putInt(numAttributes);
+        header.put(attributeBytes);
+        header.put(hash);
+        while (header.position() % 8 != 0) {
+            header.put((byte) 0);
+        }
+        header.flip();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(header);
+            block.clear();
+            for (int a = 0; a < numAttributes; a++) {
+                for (int i = 0; i < rows; i++) {
+                    if (!block.hasRemaining()) {
+                        block.flip();
+                        channel.write(block);
+                        block.clear();
+                    }
+                    block.putDouble(data.instance(i).value(a));
+                }
+            }
+            block.flip();
+            channel.write(block);
+        }
+        return toHex(hash);
+    }
+
+    /**
+     * ファイルをメモリマップして読み込み（列データはコピーしない）
+     */
+    public static ColumnarDataset map(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // ヘッダー解析用の領域（列データは列ごとに別途マップし、2GBを超えるファイルにも対応）
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(channel.size(), Integer.MAX_VALUE))
+                .order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("列指向キャッシュ形式ではありません: " + file);
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("未対応のキャッシュ形式バージョン: " + version);
+            }
+            String sourceKey = getString(buffer);
+            String relationName = getString(buffer);
+            int rows = buffer.getInt();
+            int numAttributes = buffer.getInt();
+            String[] names = new String[numAttributes];
+            String[][] nominal = new String[numAttributes][];
+            for (int a = 0; a < numAttributes; a++) {
+                names[a] = getString(buffer);
+                if (buffer.get() == NOMINAL) {
+                    nominal[a] = new String[buffer.getInt()];
+                    for (int v = 0; v < nominal[a].length; v++) {
+                        nominal[a][v] = getString(buffer);
+                    }
+                }
+            }
+            byte[] hash = new byte[HASH_BYTES];
+            buffer.get(hash);
+            while (buffer.position() % 8 != 0) {
+                buffer.get();
+            }
+
+            long dataStart = buffer.position();
+            long columnBytes = (long) rows * Double.BYTES;
+            if (channel.size() < dataStart + columnBytes * numAttributes) {
+                throw new IOException("キャッシュファイルが途中で切れています: " + file);
+            }
+            DoubleBuffer[] columns = new DoubleBuffer[numAttributes];
+            for (int a = 0; a < numAttributes; a++) {
+                columns[a] = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + a * columnBytes, columnBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            }
+            return new ColumnarDataset(sourceKey, relationName, rows, names, nominal, hash, columns);
+        }
+    }
+
+    /**
+     * 列の値（コピーなしのビュー）
+     */
+    public DoubleBuffer column(int attribute) {
+        return columns[attribute].duplicate();
+    }
+
+    public String contentHashHex() {
+        return toHex(contentHash);
+    }
+
+    /**
+     * Instancesに変換
+     */
+    public Instances toInstances() {
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int a = 0; a < attributeNames.length; a++) {
+            attributes.add(nominalValues[a] == null
+                ? new Attribute(attributeNames[a])
+                : new Attribute(attributeNames[a], new ArrayList<>(Arrays.asList(nominalValues[a]))));
+        }
+        Instances data = new Instances(relationName, attributes, numRows);
+        for (int i = 0; i < numRows; i++) {
+            double[] values = new double[attributeNames.length];
+            for (int a = 0; a < values.length; a++) {
+                values[a] = columns[a].get(i);
+            }
+            data.add(new DenseInstance(1.0, values));
+        }
+        return data;
+    }
+
+    /**
+     * 数値属性のみを行優先の行列に変換
+     */
+    public DataMatrix toDataMatrix() {
+        int numeric = 0;
+        for (String[] values : nominalValues) {
+            if (values == null) numeric++;
+        }
+        DataMatrix matrix = new DataMatrix(numRows, numeric);
+        int c = 0;
+        for (int a = 0; a < attributeNames.length; a++) {
+            if (nominalValues[a] != null) continue;
+            DoubleBuffer column = columns[a];
+            for (int i = 0; i < numRows; i++) {
+                matrix.values[i * numeric + c] = column.get(i);
+            }
+            c++;
+        }
+        return matrix;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(Integer.reverseBytes(bytes.length));
+        out.write(bytes);
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
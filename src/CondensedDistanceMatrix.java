@@ -0,0 +1,102 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+
+/**
+ * 上三角のみを保持する圧縮距離行列（float, n(n-1)/2要素）
+ * ヒープ外（ダイレクトバッファ）に確保し、閾値を超える場合は一時ファイルをメモリマップする
+ * 1GB単位のセグメントに分割するため、int添字の上限を超える規模でも扱える
+ */
+public final class CondensedDistanceMatrix implements Closeable {
+
+    /** 1セグメントのfloat数（2^28 = 1GB） */
+    private static final int SEGMENT_SHIFT = 28;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    /** これを超えるバイト数ではメモリマップファイルを使用 */
+    static final long DEFAULT_MAPPING_THRESHOLD = 256L << 20;
+
+    private final int n;
+    private final FloatBuffer[] segments;
+    private final File backingFile;
+
+    private CondensedDistanceMatrix(int n, FloatBuffer[] segments, File backingFile) {
+        this.n = n;
+        this.segments = segments;
+        this.backingFile = backingFile;
+    }
+
+    /**
+     * n点分の距離行列を確保（mappingThresholdバイトを超える場合はメモリマップ）
+     */
+    public static CondensedDistanceMatrix allocate(int n, long mappingThreshold) throws IOException {
+        long size = (long) n * (n - 1) / 2;
+        int numSegments = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        FloatBuffer[] segments = new FloatBuffer[Math.max(numSegments, 1)];
+        if (size * Float.BYTES <= mappingThreshold) {
+            for (int s = 0; s < segments.length; s++) {
+                segments[s] = ByteBuffer.allocateDirect(segmentBytes(size, s))
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            }
+            return new CondensedDistanceMatrix(n, segments, null);
+        }
+
+        File file = File.createTempFile("ward-distances-", ".bin");
+        file.deleteOnExit();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw");
+             FileChannel channel = raf.getChannel()) {
+            raf.setLength(size * Float.BYTES);
+            for (int s = 0; s < segments.length; s++) {
+                long position = ((long) s << SEGMENT_SHIFT) * Float.BYTES;
+                segments[s] = channel.map(FileChannel.MapMode.READ_WRITE, position, segmentBytes(size, s))
+                    .order(ByteOrder.nativeOrder()).asFloatBuffer();
+            }
+        }
+        return new CondensedDistanceMatrix(n, segments, file);
+    }
+
+    private static int segmentBytes(long size, int segment) {
+        long remaining = size - ((long) segment << SEGMENT_SHIFT);
+        return (int) (Math.min(remaining, 1L << SEGMENT_SHIFT) * Float.BYTES);
+    }
+
+    public int size() {
+        return n;
+    }
+
+    public boolean isMapped() {
+        return backingFile != null;
+    }
+
+    /**
+     * (i, j) の格納位置（i != j）
+     */
+    private long index(int i, int j) {
+        if (i > j) {
+            int t = i;
+            i = j;
+            j = t;
+        }
+        return (long) n * i - (long) i * (i + 1) / 2 + (j - i - 1);
+    }
+
+    public float get(int i, int j) {
+        long idx = index(i, j);
+        return segments[(int) (idx >>> SEGMENT_SHIFT)].get((int) (idx & SEGMENT_MASK));
+    }
+
+    public void set(int i, int j, float value) {
+        long idx = index(i, j);
+        segments[(int) (idx >>> SEGMENT_SHIFT)].put((int) (idx & SEGMENT_MASK), value);
+    }
+
+    /**
+     * 一時ファイルを削除（マップ済み領域はGC時に解放される）
+     */
+    @Override
+    public void close() {
+        if (backingFile != null && !backingFile.delete()) {
+            backingFile.deleteOnExit();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.io.*;
+
+/**
+ * スレッドごとのコンソール出力の振り分け
+ * System.outを差し替え、route()で出力先を設定したスレッドとその子スレッドの出力はその出力先へ、
+ * それ以外のスレッドの出力は元のコンソールへ書き出す（常駐モード・一括実行でジョブごとのログを分けるため）
+ */
+public class ConsoleRouter extends OutputStream {
+
+    private static final InheritableThreadLocal<PrintStream> TARGET = new InheritableThreadLocal<>();
+    private static PrintStream console;
+
+    private ConsoleRouter() {
+    }
+
+    /**
+     * System.outを振り分け用に差し替え（2回目以降は何もしない）
+     * 戻り値は元のコンソール
+     */
+    static synchronized PrintStream install() throws UnsupportedEncodingException {
+        if (console == null) {
+            console = System.out;
+            System.setOut(new PrintStream(new ConsoleRouter(), true, "UTF-8"));
+        }
+        return console;
+    }
+
+    /**
+     * 現在のスレッド（とこれから作る子スレッド）の出力先を設定
+     */
+    static void route(PrintStream out) {
+        TARGET.set(out);
+    }
+
+    /**
+     * 現在のスレッドの出力先を元のコンソールに戻す
+     */
+    static void reset() {
+        TARGET.remove();
+    }
+
+    private static PrintStream target() {
+        PrintStream out = TARGET.get();
+        return out != null ? out : console;
+    }
+
+    @Override
+    public void write(int b) {
+        target().write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        target().write(b, off, len);
+    }
+
+    @Override
+    public void flush() {
+        target().flush();
+    }
+}
@@ -0,0 +1,141 @@
+import java.util.*;
+
+/**
+ * K-means・Ward法の近似用の重み付きコアセット（lightweight coreset, Bachem et al. 2018）
+ * 各行を q(x) = 1/(2n) + d(x, μ)² / (2Σd²) の確率でm回復元抽出し、抽出された行に重み（抽出回数 / (m·q(x))）を与える
+ * 任意の中心集合に対するコアセット上の重み付きSSEは全データのSSEの不偏推定となり、
+ * m = O((d·k·log k + log(1/δ)) / ε²) で確率1-δ以上、誤差がε·(SSE + 全データの平方和)以内に収まる
+ *
+ * 行列は平均と二乗距離の合計を求める1回目と、抽出する2回目の2回だけ先頭から順に走査する
+ * m個の抽出位置は昇順の一様乱数列（指数乱数の累積和を正規化）として作るため、ソートや別名表は不要
+ */
+public class Coreset {
+
+    /** 誤差の上限から点数を決めるときの失敗確率δ */
+    private static final double FAILURE_PROBABILITY = 0.05;
+
+    /** 抽出された行（重複なし、元の行の順） */
+    final DataMatrix points;
+    /** 各点が代表する件数（合計の期待値は元の行数） */
+    final double[] weights;
+    /** 各点の元の行番号 */
+    final int[] rows;
+    /** 抽出回数 */
+    final int draws;
+
+    private Coreset(DataMatrix points, double[] weights, int[] rows, int draws) {
+        this.points = points;
+        this.weights = weights;
+        this.rows = rows;
+        this.draws = draws;
+    }
+
+    /**
+     * 誤差の上限εと最大クラスタ数から抽出回数を決める（定数倍を除いた理論値の目安）
+     */
+    static int sizeFor(double epsilon, int cols, int maxK) {
+        if (epsilon <= 0 || epsilon >= 1) {
+            throw new IllegalArgumentException("コアセットの誤差の上限は0より大きく1未満: " + epsilon);
+        }
+        double k = Math.max(2, maxK);
+        double size = (cols * k * Math.log(k) + Math.log(1 / FAILURE_PROBABILITY)) / (epsilon * epsilon);
+        return (int) Math.min(Integer.MAX_VALUE, Math.ceil(size));
+    }
+
+    /**
+     * draws回の抽出でコアセットを作成
+     */
+    static Coreset build(DataMatrix data, int draws, long seed) {
+        if (draws < 1) {
+            throw new IllegalArgumentException("コアセットの抽出回数は1以上が必要です: " + draws);
+        }
+        int n = data.rows;
+        int d = data.cols;
+
+        // 1回目: 平均と、平均からの二乗距離の合計（Σ||x||² - n·||μ||²）
+        double[] mean = new double[d];
+        double squaredNorms = 0;
+        for (int i = 0; i < n; i++) {
+            int offset = i * d;
+            for (int j = 0; j < d; j++) {
+                double v = data.values[offset + j];
+                mean[j] += v;
+                squaredNorms += v * v;
+            }
+        }
+        double meanNorm = 0;
+        for (int j = 0; j < d; j++) {
+            mean[j] /= n;
+            meanNorm += mean[j] * mean[j];
+        }
+        double total = Math.max(0, squaredNorms - n * meanNorm);
+
+        // 抽出位置: 昇順に並んだdraws個の一様乱数
+        SplittableRandom random = new SplittableRandom(seed);
+        double[] positions = new double[draws];
+        double sum = 0;
+        for (int m = 0; m < draws; m++) {
+            sum += -Math.log(1 - random.nextDouble());
+            positions[m] = sum;
+        }
+        sum += -Math.log(1 - random.nextDouble());
+        for (int m = 0; m < draws; m++) {
+            positions[m] /= sum;
+        }
+
+        // 2回目: 累積確率が抽出位置を超えた行を抽出（同じ行の複数回の抽出は重みにまとめる）
+        int[] rows = new int[Math.min(n, draws)];
+        double[] weights = new double[rows.length];
+        int size = 0;
+        double cumulative = 0;
+        int next = 0;
+        for (int i = 0; i < n && next < draws; i++) {
+            double q = total > 0
+                ? 0.5 / n + 0.5 * data.squaredDistance(i, mean) / total
+                : 1.0 / n;
+            cumulative += q;
+            int hits = 0;
+            while (next < draws && (positions[next] < cumulative || i == n - 1)) {
+                hits++;
+                next++;
+            }
+            if (hits > 0) {
+                rows[size] = i;
+                weights[size] = hits / (draws * q);
+                size++;
+            }
+        }
+        DataMatrix points = new DataMatrix(size, d);
+        for (int p = 0; p < size; p++) {
+            System.arraycopy(data.values, rows[p] * d, points.values, p * d, d);
+        }
+        return new Coreset(points, Arrays.copyOf(weights, size), Arrays.copyOf(rows, size), draws);
+    }
+
+    public int size() {
+        return points.rows;
+    }
+
+    /**
+     * クラスタごとの重み付き平均（空のクラスタは原点）
+     */
+    static double[][] clusterMeans(DataMatrix points, double[] weights, int[] labels, int k) {
+        double[][] means = new double[k][points.cols];
+        double[] totals = new double[k];
+        for (int i = 0; i < points.rows; i++) {
+            double w = weights == null ? 1 : weights[i];
+            totals[labels[i]] += w;
+            int offset = i * points.cols;
+            for (int j = 0; j < points.cols; j++) {
+                means[labels[i]][j] += w * points.values[offset + j];
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            if (totals[c] == 0) continue;
+            for (int j = 0; j < points.cols; j++) {
+                means[c][j] /= totals[c];
+            }
+        }
+        return means;
+    }
+}
@@ -0,0 +1,203 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 全属性ペアの相関行列を1回の走査で求めるエンジン
+ * チャンクごとにCovarianceAccumulator（Welford法）を並列に集計し、最後にmergeで統合する
+ */
+public class CorrelationEngine {
+
+    /** 並列集計でこれ以下の行数になったら分割をやめる */
+    private static final int SPLIT_THRESHOLD = 8192;
+
+    private CorrelationEngine() {
+    }
+
+    /**
+     * 行列の全行を並列に集計
+     */
+    public static CovarianceAccumulator accumulate(DataMatrix data, ForkJoinPool pool) {
+        return pool.invoke(new AccumulateTask(data, 0, data.rows));
+    }
+
+    private static final class AccumulateTask extends RecursiveTask<CovarianceAccumulator> {
+        private static final long serialVersionUID = 1L;
+        private final DataMatrix data;
+        private final int from;
+        private final int to;
+
+        AccumulateTask(DataMatrix data, int from, int to) {
+            this.data = data;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected CovarianceAccumulator compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                return accumulateRange(data, from, to);
+            }
+            int mid = (from + to) >>> 1;
+            AccumulateTask right = new AccumulateTask(data, mid, to);
+            right.fork();
+            CovarianceAccumulator result = new AccumulateTask(data, from, mid).compute();
+            result.merge(right.join());
+            return result;
+        }
+    }
+
+    static CovarianceAccumulator accumulateRange(DataMatrix data, int from, int to) {
+        CovarianceAccumulator accumulator = new CovarianceAccumulator(data.cols);
+        for (int i = from; i < to; i++) {
+            accumulator.add(data, i);
+        }
+        return accumulator;
+    }
+
+    /**
+     * 累積器からPearson相関行列を算出（分散0の列との相関はNaN）
+     */
+    public static double[][] pearson(CovarianceAccumulator accumulator) {
+        double[][] cov = accumulator.covariance();
+        int d = cov.length;
+        double[][] r = new double[d][d];
+        for (int i = 0; i < d; i++) {
+            for (int j = 0; j < d; j++) {
+                double denominator = Math.sqrt(cov[i][i] * cov[j][j]);
+                r[i][j] = i == j ? 1.0 : denominator > 0 ? cov[i][j] / denominator : Double.NaN;
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Spearman順位相関行列（列ごとに平均順位へ変換してからPearson相関を算出）
+     * 順位付けには列全体が必要なため、メモリ上の行列のみ対応
+     */
+    public static double[][] spearman(DataMatrix data, ForkJoinPool pool) throws Exception {
+        DataMatrix ranked = new DataMatrix(data.rows, data.cols);
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int j = 0; j < data.cols; j++) {
+            int column = j;
+            tasks.add(() -> {
+                double[] values = new double[data.rows];
+                for (int i = 0; i < data.rows; i++) {
+                    values[i] = data.get(i, column);
+                }
+                double[] ranks = ranks(values);
+                for (int i = 0; i < data.rows; i++) {
+                    ranked.set(i, column, ranks[i]);
+                }
+                return null;
+            });
+        }
+        for (Future<Void> future : pool.invokeAll(tasks)) {
+            future.get();
+        }
+        return pearson(accumulate(ranked, pool));
+    }
+
+    /**
+     * 平均順位（同順位は順位の平均、1始まり）
+     */
+    static double[] ranks(double[] values) {
+        int n = values.length;
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(i -> values[i]));
+        double[] ranks = new double[n];
+        int start = 0;
+        while (start < n) {
+            int end = start + 1;
+            while (end < n && values[order[end]] == values[order[start]]) {
+                end++;
+            }
+            double rank = (start + end + 1) / 2.0; // (start+1 .. end) の平均
+            for (int i = start; i < end; i++) {
+                ranks[order[i]] = rank;
+            }
+            start = end;
+        }
+        return ranks;
+    }
+
+    /**
+     * 回答者ストリームの数値列を集計するハンドラ
+     * 受け取ったチャンクを数値行列に変換してプールに投入し、投入済みタスクが上限を超えたら古い順に統合する
+     * （数値に変換できない値を含む行は除外）
+     */
+    public static final class StreamHandler implements RespondentStreamLoader.ChunkHandler {
+        private final String[] columns;
+        private final ForkJoinPool pool;
+        private final int maxInFlight;
+        private final Deque<Future<CovarianceAccumulator>> inFlight = new ArrayDeque<>();
+        private final CovarianceAccumulator total;
+        private long skippedRows;
+
+        public StreamHandler(String[] columns, ForkJoinPool pool) {
+            this.columns = columns;
+            this.pool = pool;
+            this.maxInFlight = pool.getParallelism() * 2;
+            this.total = new CovarianceAccumulator(columns.length);
+        }
+
+        @Override
+        public void accept(RespondentStreamLoader.Chunk chunk) throws Exception {
+            int[] index = new int[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                index[c] = chunk.columnIndex(columns[c]);
+                if (index[c] < 0) {
+                    throw new IllegalArgumentException("相関分析の列がありません: " + columns[c]);
+                }
+            }
+            // チャンクの配列はハンドラ終了後に再利用されるため、ここで数値行列にコピーする
+            double[] values = new double[chunk.size() * columns.length];
+            int rows = 0;
+            for (int r = 0; r < chunk.size(); r++) {
+                int offset = rows * columns.length;
+                boolean valid = true;
+                for (int c = 0; c < columns.length && valid; c++) {
+                    String value = chunk.value(r, index[c]);
+                    if (value == null) {
+                        // JSONLで省略された・nullの値は欠損
+                        valid = false;
+                        continue;
+                    }
+                    try {
+                        values[offset + c] = Double.parseDouble(value);
+                        valid = !Double.isNaN(values[offset + c]);
+                    } catch (NumberFormatException e) {
+                        valid = false;
+                    }
+                }
+                if (valid) rows++;
+                else skippedRows++;
+            }
+            DataMatrix matrix = new DataMatrix(rows, columns.length, Arrays.copyOf(values, rows * columns.length));
+            inFlight.addLast(pool.submit(() -> accumulateRange(matrix, 0, matrix.rows)));
+            while (inFlight.size() > maxInFlight) {
+                total.merge(inFlight.removeFirst().get());
+            }
+        }
+
+        /**
+         * 残りのタスクを統合して最終結果を返す
+         */
+        public CovarianceAccumulator result() throws Exception {
+            while (!inFlight.isEmpty()) {
+                total.merge(inFlight.removeFirst().get());
+            }
+            return total;
+        }
+
+        public String[] getColumns() {
+            return columns;
+        }
+
+        public long getSkippedRows() {
+            return skippedRows;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/**
+ * 平均と共分散を1パスで求める累積器（Welford法の多変量版）
+ * 各行を1回見るだけで更新でき、別スレッドで集計した累積器同士をmergeで統合できる（Chan et al.）
+ */
+public class CovarianceAccumulator {
+
+    private final int dim;
+    private long count;
+    private final double[] mean;
+    /** 偏差積和 Σ(x_i - mean_i)(x_j - mean_j)（上三角を含む全要素） */
+    private final double[][] comoment;
+    private final double[] delta;
+
+    public CovarianceAccumulator(int dim) {
+        this.dim = dim;
+        this.mean = new double[dim];
+        this.comoment = new double[dim][dim];
+        this.delta = new double[dim];
+    }
+
+    /**
+     * 1行を追加
+     */
+    public void add(double[] x) {
+        add(x, 0);
+    }
+
+    /**
+     * 行列の1行を追加
+     */
+    public void add(DataMatrix data, int row) {
+        add(data.values, row * data.cols);
+    }
+
+    private void add(double[] values, int offset) {
+        count++;
+        for (int i = 0; i < dim; i++) {
+            delta[i] = values[offset + i] - mean[i];
+            mean[i] += delta[i] / count;
+        }
+        // delta は更新前の平均との差、(x - 新しい平均) との積で偏差積和を更新
+        for (int i = 0; i < dim; i++) {
+            double di = delta[i];
+            for (int j = i; j < dim; j++) {
+                comoment[i][j] += di * (values[offset + j] - mean[j]);
+            }
+        }
+    }
+
+    /**
+     * 別の累積器を統合
+     */
+    public void merge(CovarianceAccumulator other) {
+        if (other.dim != dim) {
+            throw new IllegalArgumentException("次元数が一致しません: " + dim + " / " + other.dim);
+        }
+        if (other.count == 0) return;
+        if (count == 0) {
+            count = other.count;
+            System.arraycopy(other.mean, 0, mean, 0, dim);
+            for (int i = 0; i < dim; i++) {
+                System.arraycopy(other.comoment[i], 0, comoment[i], 0, dim);
+            }
+            return;
+        }
+        long total = count + other.count;
+        double factor = (double) count * other.count / total;
+        for (int i = 0; i < dim; i++) {
+            delta[i] = other.mean[i] - mean[i];
+        }
+        for (int i = 0; i < dim; i++) {
+            for (int j = i; j < dim; j++) {
+                comoment[i][j] += other.comoment[i][j] + delta[i] * delta[j] * factor;
+            }
+        }
+        for (int i = 0; i < dim; i++) {
+            mean[i] += delta[i] * other.count / total;
+        }
+        count = total;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public int getDimension() {
+        return dim;
+    }
+
+    public double[] getMean() {
+        return mean.clone();
+    }
+
+    /**
+     * 不偏共分散行列（n-1で除算）
+     */
+    public double[][] covariance() {
+        if (count < 2) {
+            throw new IllegalStateException("共分散の算出には2行以上必要です: " + count + "行");
+        }
+        double[][] cov = new double[dim][dim];
+        for (int i = 0; i < dim; i++) {
+            for (int j = i; j < dim; j++) {
+                cov[i][j] = comoment[i][j] / (count - 1);
+                cov[j][i] = cov[i][j];
+            }
+        }
+        return cov;
+    }
+}
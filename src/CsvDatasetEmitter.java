@@ -0,0 +1,356 @@
+import weka.core.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * グラフ作成用CSVデータセットの一括出力
+ * データを1回走査してフレームワーク比較・K-meansクラスタの行を同時に書き出し（矛盾指数は1行につき1回だけ算出）、
+ * 同じ走査で作った数値行列から相関行列を、学習済みモデルからPCA結果を出力する
+ * 数値はFormatterを介さずに整形し（printfと同じ四捨五入）、gzip圧縮出力にも対応
+ */
+public class CsvDatasetEmitter {
+
+    private final File directory;
+    private final boolean gzip;
+
+    public CsvDatasetEmitter(File directory, boolean gzip) {
+        this.directory = directory;
+        this.gzip = gzip;
+    }
+
+    /**
+     * 出力ファイル（gzip時は .csv.gz）
+     */
+    public File file(String name) {
+        return new File(directory, gzip ? name + ".gz" : name);
+    }
+
+    /**
+     * 5つのデータセットを出力（spearman指定時はSpearman相関行列も追加）
+     * @param timeSeries Next.jsの年ごとの継続率（空の場合は時系列を見出し行のみ出力）
+     */
+    public void emit(Instances data, KMeansResult kmeans, PrincipalComponentAnalysis pca,
+                     SortedMap<Integer, Double> timeSeries, ForkJoinPool pool, boolean spearman) throws Exception {
+        int n = data.numInstances();
+        int[] numeric = numericAttributes(data);
+        Attribute framework = data.attribute("framework");
+        int[] clusters = kmeans.assignments;
+        if (clusters.length != n) {
+            throw new IllegalArgumentException("K-meansの割り当て数がインスタンス数と一致しません: " + clusters.length + " / " + n);
+        }
+        String[] patterns = clusterPatterns(data, clusters);
+
+        // 1回の走査でフレームワーク比較とK-meansクラスタを出力し、相関行列用の数値行列を作成
+        DataMatrix matrix = new DataMatrix(n, numeric.length);
+        try (CsvWriter comparison = new CsvWriter(file("framework_comparison.csv"), gzip);
+             CsvWriter clustersOut = new CsvWriter(file("kmeans_clusters.csv"), gzip)) {
+            comparison.append("Framework,Usage_Rate,Retention_Rate,Positivity_Rate,Interest_Rate,Awareness_Rate,"
+                + "Appreciation_Rate,Contradiction_Index").newline();
+            clustersOut.append("Framework,Cluster,Usage_Rate,Retention_Rate,Contradiction_Index,Pattern_Type").newline();
+            for (int i = 0; i < n; i++) {
+                Instance instance = data.instance(i);
+                int offset = i * numeric.length;
+                for (int c = 0; c < numeric.length; c++) {
+                    matrix.values[offset + c] = instance.value(numeric[c]);
+                }
+                String name = instance.stringValue(framework);
+                double usage = matrix.values[offset];
+                double retention = matrix.values[offset + 1];
+                double contradiction = (usage / retention) * 100;
+
+                comparison.append(field(name));
+                for (int c = 0; c < 6; c++) {
+                    comparison.append(',').appendFixed(matrix.values[offset + c], 3);
+                }
+                comparison.append(',').appendFixed(contradiction, 2).newline();
+
+                clustersOut.append(field(name)).append(',').appendLong(clusters[i])
+                    .append(',').appendFixed(usage, 3).append(',').appendFixed(retention, 3)
+                    .append(',').appendFixed(contradiction, 2).append(',').append(patterns[clusters[i]]).newline();
+            }
+        }
+
+        writeTimeSeries(timeSeries);
+
+        String[] factors = new String[numeric.length];
+        for (int c = 0; c < numeric.length; c++) {
+            factors[c] = csvFactorName(data.attribute(numeric[c]).name());
+        }
+        writeCorrelationMatrix(file("correlation_matrix.csv"), gzip, factors,
+            CorrelationEngine.pearson(CorrelationEngine.accumulate(matrix, pool)));
+        if (spearman) {
+            writeCorrelationMatrix(file("correlation_matrix_spearman.csv"), gzip, factors,
+                CorrelationEngine.spearman(matrix, pool));
+        }
+
+        writePCAResults(pca, data, numeric);
+    }
+
+    /**
+     * Next.jsの継続率の時系列と最小二乗直線による予測値（直線が求まる場合は最終年の3年先まで予測）
+     */
+    private void writeTimeSeries(SortedMap<Integer, Double> retention) throws IOException {
+        RetentionTrend trend = new RetentionTrend();
+        for (Map.Entry<Integer, Double> e : retention.entrySet()) {
+            trend.add(e.getKey(), e.getValue());
+        }
+        boolean fitted = !Double.isNaN(trend.slope());
+
+        try (CsvWriter writer = new CsvWriter(file("nextjs_timeseries.csv"), gzip)) {
+            writer.append("Year,Retention_Rate,Predicted_Rate,Trend").newline();
+            Double previous = null;
+            for (Map.Entry<Integer, Double> e : retention.entrySet()) {
+                writer.appendLong(e.getKey()).append(',').appendFixed(e.getValue(), 3).append(',');
+                if (fitted) {
+                    writer.appendFixed(trend.fitted(e.getKey()), 3);
+                }
+                String direction = previous != null && e.getValue() < previous ? "劣化" : "改善";
+                writer.append(',').append(direction).newline();
+                previous = e.getValue();
+            }
+            if (fitted) {
+                // 将来予測も追加
+                int last = retention.lastKey();
+                for (int year = last + 1; year <= last + 3; year++) {
+                    double predicted = trend.fitted(year);
+                    writer.appendLong(year).append(',').appendFixed(predicted, 3)
+                        .append(',').appendFixed(predicted, 3).append(",予測").newline();
+                }
+            }
+        }
+    }
+
+    /**
+     * PCA結果（寄与率・累積寄与率・主要属性・負荷量）
+     */
+    private void writePCAResults(PrincipalComponentAnalysis pca, Instances data, int[] numeric) throws IOException {
+        String[] names = new String[numeric.length];
+        for (int c = 0; c < numeric.length; c++) {
+            names[c] = data.attribute(numeric[c]).name();
+        }
+        try (CsvWriter writer = new CsvWriter(file("pca_results.csv"), gzip)) {
+            writer.append("Principal_Component,Variance_Explained,Cumulative_Variance,Main_Features");
+            for (String name : names) {
+                writer.append(",Loading_").append(name);
+            }
+            writer.newline();
+
+            double cumulative = 0;
+            for (int k = 0; k < pca.numComponents(); k++) {
+                double variance = pca.explainedVariance(k);
+                cumulative += variance;
+                writer.append("PC").appendLong(k + 1).append(',').appendFixed(variance, 1)
+                    .append(',').appendFixed(cumulative, 1).append(',').append(mainFeatures(pca.components[k], names));
+                for (double loading : pca.components[k]) {
+                    writer.append(',').appendFixed(loading, 3);
+                }
+                writer.newline();
+            }
+        }
+    }
+
+    /**
+     * 相関行列をCSV出力（1列目が要因名、以降が各要因との相関係数）
+     */
+    static void writeCorrelationMatrix(File file, boolean gzip, String[] factors, double[][] correlations)
+            throws IOException {
+        try (CsvWriter writer = new CsvWriter(file, gzip)) {
+            writer.append("Factor," + String.join(",", factors)).newline();
+            for (int i = 0; i < factors.length; i++) {
+                writer.append(factors[i]);
+                for (int j = 0; j < factors.length; j++) {
+                    writer.append(',').appendFixed(correlations[i][j], 3);
+                }
+                writer.newline();
+            }
+        }
+    }
+
+    /**
+     * 属性名をCSV見出し形式に変換（usage_rate → Usage_Rate）
+     */
+    static String csvFactorName(String attributeName) {
+        StringBuilder sb = new StringBuilder(attributeName.length());
+        boolean upper = true;
+        for (char c : attributeName.toCharArray()) {
+            sb.append(upper ? Character.toUpperCase(c) : c);
+            upper = c == '_';
+        }
+        return sb.toString();
+    }
+
+    /**
+     * クラスタの型を判定（平均継続率0.5未満は衰退型、平均矛盾指数が全体平均を超えれば矛盾型、それ以外は理想型）
+     */
+    static String[] clusterPatterns(Instances data, int[] clusters) {
+        int k = Arrays.stream(clusters).max().orElse(-1) + 1;
+        double[] retention = new double[k];
+        double[] contradiction = new double[k];
+        int[] counts = new int[k];
+        double overall = 0;
+        for (int i = 0; i < clusters.length; i++) {
+            double index = data.instance(i).value(0) / data.instance(i).value(1) * 100;
+            retention[clusters[i]] += data.instance(i).value(1);
+            contradiction[clusters[i]] += index;
+            counts[clusters[i]]++;
+            overall += index;
+        }
+        overall /= clusters.length;
+        String[] patterns = new String[k];
+        for (int c = 0; c < k; c++) {
+            if (counts[c] == 0) continue;
+            patterns[c] = retention[c] / counts[c] < 0.5 ? "衰退型"
+                : contradiction[c] / counts[c] > overall ? "矛盾型"
+                : "理想型";
+        }
+        return patterns;
+    }
+
+    /**
+     * 負荷量の絶対値が大きい属性（最大値の半分以上）を "+" で連結（負の負荷量は "(負)" を付記）
+     */
+    private static String mainFeatures(double[] loadings, String[] names) {
+        double max = 0;
+        for (double loading : loadings) {
+            max = Math.max(max, Math.abs(loading));
+        }
+        Integer[] order = new Integer[loadings.length];
+        for (int j = 0; j < order.length; j++) {
+            order[j] = j;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(Math.abs(loadings[b]), Math.abs(loadings[a])));
+        StringJoiner features = new StringJoiner("+");
+        for (int j : order) {
+            if (Math.abs(loadings[j]) < max / 2) break;
+            String name = names[j].replace("_rate", "");
+            features.add(Character.toUpperCase(name.charAt(0)) + name.substring(1) + (loadings[j] < 0 ? "(負)" : ""));
+        }
+        return features.toString();
+    }
+
+    private static int[] numericAttributes(Instances data) {
+        int[] columns = new int[data.numAttributes()];
+        int numeric = 0;
+        for (int a = 0; a < data.numAttributes(); a++) {
+            if (data.attribute(a).isNumeric()) {
+                columns[numeric++] = a;
+            }
+        }
+        return Arrays.copyOf(columns, numeric);
+    }
+
+    /**
+     * カンマ・引用符・改行を含む値をCSVの引用符付きフィールドに変換
+     */
+    static String field(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * バッファ付きCSVライター（UTF-8、改行はLF）
+     * 数値は再利用する文字配列に直接書き込み、1値ごとのFormatter生成や文字列生成を避ける
+     */
+    static final class CsvWriter implements Closeable {
+
+        private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L
+        };
+        /** 高速整形の対象とする絶対値の上限（これ以上はdouble→longの変換精度が足りない） */
+        private static final double FAST_PATH_LIMIT = 1e15;
+
+        private final Writer writer;
+        private final char[] digits = new char[24];
+
+        CsvWriter(File file, boolean gzip) throws IOException {
+            OutputStream out = new FileOutputStream(file);
+            if (gzip) {
+                out = new GZIPOutputStream(out, 1 << 16);
+            }
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        CsvWriter append(String value) throws IOException {
+            writer.write(value);
+            return this;
+        }
+
+        CsvWriter append(char value) throws IOException {
+            writer.write(value);
+            return this;
+        }
+
+        CsvWriter newline() throws IOException {
+            writer.write('\n');
+            return this;
+        }
+
+        CsvWriter appendLong(long value) throws IOException {
+            if (value < 0) {
+                if (value == Long.MIN_VALUE) {
+                    writer.write(Long.toString(value));
+                    return this;
+                }
+                writer.write('-');
+                value = -value;
+            }
+            int pos = digits.length;
+            do {
+                digits[--pos] = (char) ('0' + value % 10);
+                value /= 10;
+            } while (value > 0);
+            writer.write(digits, pos, digits.length - pos);
+            return this;
+        }
+
+        /**
+         * 小数点以下decimals桁で出力（String.format("%.Nf")と同じ結果）
+         * 丸めの境界（ちょうど5）に近い値やNaN・巨大な値はFormatterに任せる
+         */
+        CsvWriter appendFixed(double value, int decimals) throws IOException {
+            double scaled = Math.abs(value) * POWERS_OF_TEN[decimals];
+            if (Double.isNaN(value) || Double.isInfinite(value) || scaled >= FAST_PATH_LIMIT) {
+                writer.write(String.format("%." + decimals + "f", value));
+                return this;
+            }
+            double floor = Math.floor(scaled);
+            double fraction = scaled - floor;
+            if (Math.abs(fraction - 0.5) <= 4 * Math.ulp(scaled)) {
+                writer.write(String.format("%." + decimals + "f", value));
+                return this;
+            }
+            long units = (long) floor + (fraction > 0.5 ? 1 : 0);
+            if (Double.doubleToRawLongBits(value) < 0) {
+                writer.write('-');
+            }
+            long unit = POWERS_OF_TEN[decimals];
+            int pos = digits.length;
+            long fractionDigits = units % unit;
+            for (int d = 0; d < decimals; d++) {
+                digits[--pos] = (char) ('0' + fractionDigits % 10);
+                fractionDigits /= 10;
+            }
+            if (decimals > 0) {
+                digits[--pos] = '.';
+            }
+            long integer = units / unit;
+            do {
+                digits[--pos] = (char) ('0' + integer % 10);
+                integer /= 10;
+            } while (integer > 0);
+            writer.write(digits, pos, digits.length - pos);
+            return this;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+}
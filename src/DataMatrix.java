@@ -0,0 +1,89 @@
+import weka.core.*;
+
+/**
+ * 行優先の密な数値行列（1次元配列で保持し、行ごとのオブジェクト生成を避ける）
+ * クラスタリング系エンジンが共有する読み取り専用の入力として使用
+ * 距離計算はDistanceKernel（Vector APIが使えればSIMD版）で行う
+ */
+public final class DataMatrix {
+
+    private static final DistanceKernel KERNEL = DistanceKernel.INSTANCE;
+
+    final int rows;
+    final int cols;
+    final double[] values;
+
+    public DataMatrix(int rows, int cols) {
+        this(rows, cols, new double[Math.multiplyExact(rows, cols)]);
+    }
+
+    public DataMatrix(int rows, int cols, double[] values) {
+        if (values.length != (long) rows * cols) {
+            throw new IllegalArgumentException("要素数が行列サイズと一致しません: " + values.length);
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.values = values;
+    }
+
+    /**
+     * Instancesの数値属性のみを行列化（名義属性は除外）
+     */
+    public static DataMatrix fromInstances(Instances data) {
+        int numeric = 0;
+        int[] columns = new int[data.numAttributes()];
+        for (int a = 0; a < data.numAttributes(); a++) {
+            if (data.attribute(a).isNumeric()) {
+                columns[numeric++] = a;
+            }
+        }
+        DataMatrix matrix = new DataMatrix(data.numInstances(), numeric);
+        for (int i = 0; i < matrix.rows; i++) {
+            Instance instance = data.instance(i);
+            int offset = i * numeric;
+            for (int c = 0; c < numeric; c++) {
+                matrix.values[offset + c] = instance.value(columns[c]);
+            }
+        }
+        return matrix;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int cols() {
+        return cols;
+    }
+
+    public double get(int row, int col) {
+        return values[row * cols + col];
+    }
+
+    public void set(int row, int col, double value) {
+        values[row * cols + col] = value;
+    }
+
+    /**
+     * 行をコピーして返す
+     */
+    public double[] row(int row) {
+        double[] out = new double[cols];
+        System.arraycopy(values, row * cols, out, 0, cols);
+        return out;
+    }
+
+    /**
+     * 行と任意の点との二乗ユークリッド距離
+     */
+    public double squaredDistance(int row, double[] point) {
+        return KERNEL.squaredDistance(values, row * cols, point, 0, cols);
+    }
+
+    /**
+     * 2行間の二乗ユークリッド距離
+     */
+    public double squaredDistance(int a, int b) {
+        return KERNEL.squaredDistance(values, a * cols, values, b * cols, cols);
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * 密な数値行（double配列の区間）間の二乗ユークリッド距離カーネル
+ * K-means・エルボー探索・Ward法・シルエット係数など、DataMatrix上の全距離計算がこのカーネルを通る
+ *
+ * JDK Vector API（jdk.incubator.vector）が使え、SIMD版（src-vector/VectorDistanceKernel）がコンパイル済みの場合はSIMD版、
+ * それ以外の場合はスカラー版を使う
+ * 実行時に --add-modules jdk.incubator.vector を指定するとSIMD版が有効になり、
+ * -Ddistance.kernel=scalar でスカラー版に固定できる（-Ddistance.kernel=vector はSIMD版が使えない場合にエラー）
+ * SIMD版は加算順序が異なるため、スカラー版と最下位ビットが異なる場合がある
+ */
+public abstract class DistanceKernel {
+
+    /** 実行環境で選択したカーネル（クラス初期化時に1回だけ決める） */
+    static final DistanceKernel INSTANCE = select();
+
+    /**
+     * a[aOffset..aOffset+length) と b[bOffset..bOffset+length) の二乗ユークリッド距離
+     */
+    abstract double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length);
+
+    /**
+     * カーネルの説明（ログ・ベンチマーク結果用）
+     */
+    abstract String description();
+
+    private static DistanceKernel select() {
+        String mode = System.getProperty("distance.kernel", "auto");
+        if (!mode.equals("auto") && !mode.equals("scalar") && !mode.equals("vector")) {
+            throw new IllegalArgumentException("distance.kernel の値は auto / scalar / vector のいずれか: " + mode);
+        }
+        if (!mode.equals("scalar")) {
+            try {
+                // SIMD版が未コンパイル、またはVector APIのモジュールがない場合はクラスの読み込み・初期化に失敗する
+                return (DistanceKernel) Class.forName("VectorDistanceKernel").getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | LinkageError e) {
+                if (mode.equals("vector")) {
+                    throw new IllegalStateException("SIMD版の距離カーネルを使用できません"
+                        + "（src-vector/ をコンパイルし、--add-modules jdk.incubator.vector を指定してください）: " + e, e);
+                }
+            }
+        }
+        return new Scalar();
+    }
+
+    /**
+     * スカラー版（要素ごとの差の二乗を順に加算）
+     */
+    static final class Scalar extends DistanceKernel {
+
+        @Override
+        double squaredDistance(double[] a, int aOffset, double[] b, int bOffset, int length) {
+            double sum = 0;
+            for (int c = 0; c < length; c++) {
+                double d = a[aOffset + c] - b[bOffset + c];
+                sum += d * d;
+            }
+            return sum;
+        }
+
+        @Override
+        String description() {
+            return "スカラー";
+        }
+    }
+}
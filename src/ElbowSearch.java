@@ -0,0 +1,298 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * K値 × 乱数シードの並列エルボー探索
+ * 標準化済み行列を1つだけ用意し、ForkJoinPool上の全候補実行で共有する
+ * 指標: K別の最良/平均SSE、任意でシルエット係数・Gap統計量
+ */
+public class ElbowSearch {
+
+    /** シード番号0の乱数シード（以降は+1ずつ） */
+    static final long BASE_SEED = 42;
+
+    /** これを超えるインスタンス数では簡易シルエット（中心距離ベース）を使用 */
+    private static final int SILHOUETTE_EXACT_LIMIT = 5000;
+
+    private static final int MAX_ITERATIONS = 100;
+
+    /**
+     * K値ごとの集計結果
+     */
+    public static final class KStats {
+        final int k;
+        final KMeansResult best;
+        final double meanSse;
+        double silhouette = Double.NaN;
+        double gap = Double.NaN;
+        double gapStdError = Double.NaN;
+
+        KStats(int k, KMeansResult best, double meanSse) {
+            this.k = k;
+            this.best = best;
+            this.meanSse = meanSse;
+        }
+
+        public double getBestSse() {
+            return best.sse;
+        }
+    }
+
+    private final DataMatrix data;
+    private final int minK;
+    private final int maxK;
+    private final int seeds;
+    private boolean silhouette;
+    private int gapReferences;
+    private double[] weights;
+
+    public ElbowSearch(DataMatrix data, int minK, int maxK, int seeds) {
+        if (minK < 1 || maxK < minK || seeds < 1) {
+            throw new IllegalArgumentException("探索範囲が不正です: K=" + minK + ".." + maxK + ", seeds=" + seeds);
+        }
+        if (data.rows < minK) {
+            throw new IllegalArgumentException("行数(" + data.rows + ")が探索するK値の最小値(" + minK + ")未満です");
+        }
+        this.data = data;
+        this.minK = minK;
+        this.maxK = Math.min(maxK, data.rows);
+        this.seeds = seeds;
+    }
+
+    /**
+     * シルエット係数を算出する
+     */
+    public ElbowSearch withSilhouette(boolean enabled) {
+        this.silhouette = enabled;
+        return this;
+    }
+
+    /**
+     * 一様参照データをreferences個生成してGap統計量を算出する（0で無効）
+     */
+    public ElbowSearch withGap(int references) {
+        this.gapReferences = references;
+        return this;
+    }
+
+    /**
+     * 行ごとの重み（コアセットの各点が代表する件数）でSSEを求める
+     * シルエット係数は重みを使わず行単位で算出し、Gap統計量の参照データのSSEは重みの合計 / 行数倍して比較する
+     */
+    public ElbowSearch withWeights(double[] weights) {
+        this.weights = weights;
+        return this;
+    }
+
+    /**
+     * 全候補を並列実行してK別の結果を返す
+     */
+    public List<KStats> run(ForkJoinPool pool) throws Exception {
+        int numK = maxK - minK + 1;
+        List<Callable<KMeansResult>> runs = new ArrayList<>();
+        for (int k = minK; k <= maxK; k++) {
+            for (int s = 0; s < seeds; s++) {
+                int kk = k;
+                long seed = BASE_SEED + s;
+                runs.add(() -> LloydKMeans.fit(data, weights, kk, seed, MAX_ITERATIONS));
+            }
+        }
+        List<Future<KMeansResult>> futures = pool.invokeAll(runs);
+
+        List<KStats> stats = new ArrayList<>(numK);
+        for (int i = 0; i < numK; i++) {
+            KMeansResult best = null;
+            double sum = 0;
+            for (int s = 0; s < seeds; s++) {
+                KMeansResult result = futures.get(i * seeds + s).get();
+                sum += result.sse;
+                if (best == null || result.sse < best.sse) {
+                    best = result;
+                }
+            }
+            stats.add(new KStats(minK + i, best, sum / seeds));
+        }
+
+        if (silhouette) {
+            List<Callable<Double>> tasks = new ArrayList<>();
+            for (KStats s : stats) {
+                tasks.add(() -> silhouette(data, s.best));
+            }
+            List<Future<Double>> results = pool.invokeAll(tasks);
+            for (int i = 0; i < numK; i++) {
+                stats.get(i).silhouette = results.get(i).get();
+            }
+        }
+        if (gapReferences > 0) {
+            computeGap(stats, pool);
+        }
+        return stats;
+    }
+
+    /**
+     * Gap統計量（Tibshirani et al. 2001）
+     * 参照データはデータの各列の最小値〜最大値の一様分布から生成し、全K値で共有する
+     */
+    private void computeGap(List<KStats> stats, ForkJoinPool pool) throws Exception {
+        double[] min = new double[data.cols];
+        double[] max = new double[data.cols];
+        Arrays.fill(min, Double.POSITIVE_INFINITY);
+        Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        for (int i = 0; i < data.rows; i++) {
+            for (int j = 0; j < data.cols; j++) {
+                double v = data.get(i, j);
+                min[j] = Math.min(min[j], v);
+                max[j] = Math.max(max[j], v);
+            }
+        }
+        DataMatrix[] references = new DataMatrix[gapReferences];
+        for (int b = 0; b < gapReferences; b++) {
+            Random random = new Random(BASE_SEED + 1000 + b);
+            references[b] = new DataMatrix(data.rows, data.cols);
+            for (int i = 0; i < data.rows; i++) {
+                for (int j = 0; j < data.cols; j++) {
+                    references[b].set(i, j, min[j] + random.nextDouble() * (max[j] - min[j]));
+                }
+            }
+        }
+
+        double scale = 1;
+        if (weights != null) {
+            double total = 0;
+            for (double w : weights) total += w;
+            scale = total / data.rows;
+        }
+        double referenceScale = scale;
+        List<Callable<Double>> tasks = new ArrayList<>();
+        for (KStats s : stats) {
+            for (DataMatrix reference : references) {
+                tasks.add(() -> logW(referenceScale * LloydKMeans.fit(reference, s.k, BASE_SEED, MAX_ITERATIONS).sse));
+            }
+        }
+        List<Future<Double>> results = pool.invokeAll(tasks);
+        for (int i = 0; i < stats.size(); i++) {
+            double[] logRef = new double[gapReferences];
+            double mean = 0;
+            for (int b = 0; b < gapReferences; b++) {
+                logRef[b] = results.get(i * gapReferences + b).get();
+                mean += logRef[b];
+            }
+            mean /= gapReferences;
+            double var = 0;
+            for (double v : logRef) {
+                var += (v - mean) * (v - mean);
+            }
+            KStats s = stats.get(i);
+            s.gap = mean - logW(s.best.sse);
+            s.gapStdError = Math.sqrt(var / gapReferences) * Math.sqrt(1.0 + 1.0 / gapReferences);
+        }
+    }
+
+    private static double logW(double sse) {
+        return Math.log(Math.max(sse, 1e-12));
+    }
+
+    /**
+     * 平均シルエット係数
+     */
+    static double silhouette(DataMatrix data, KMeansResult result) {
+        if (result.k < 2) return Double.NaN;
+        return data.rows <= SILHOUETTE_EXACT_LIMIT
+            ? exactSilhouette(data, result.assignments, result.k)
+            : simplifiedSilhouette(data, result);
+    }
+
+    private static double exactSilhouette(DataMatrix data, int[] assignments, int k) {
+        int[] sizes = new int[k];
+        for (int a : assignments) {
+            sizes[a]++;
+        }
+        double total = 0;
+        double[] sums = new double[k];
+        for (int i = 0; i < data.rows; i++) {
+            Arrays.fill(sums, 0);
+            for (int j = 0; j < data.rows; j++) {
+                if (i != j) {
+                    sums[assignments[j]] += Math.sqrt(data.squaredDistance(i, j));
+                }
+            }
+            int own = assignments[i];
+            if (sizes[own] <= 1) continue; // 単独クラスタのシルエットは0
+            double a = sums[own] / (sizes[own] - 1);
+            double b = Double.MAX_VALUE;
+            for (int c = 0; c < k; c++) {
+                if (c != own && sizes[c] > 0) {
+                    b = Math.min(b, sums[c] / sizes[c]);
+                }
+            }
+            total += (b - a) / Math.max(a, b);
+        }
+        return total / data.rows;
+    }
+
+    private static double simplifiedSilhouette(DataMatrix data, KMeansResult result) {
+        double total = 0;
+        for (int i = 0; i < data.rows; i++) {
+            int own = result.assignments[i];
+            double a = Math.sqrt(data.squaredDistance(i, result.centroids[own]));
+            double b = Double.MAX_VALUE;
+            for (int c = 0; c < result.k; c++) {
+                if (c != own) {
+                    b = Math.min(b, Math.sqrt(data.squaredDistance(i, result.centroids[c])));
+                }
+            }
+            double denominator = Math.max(a, b);
+            total += denominator == 0 ? 0 : (b - a) / denominator;
+        }
+        return total / data.rows;
+    }
+
+    /**
+     * 最良SSEの減少量が最大となるK値（簡易エルボー法）
+     */
+    public static int selectByLargestDrop(List<KStats> stats) {
+        int optimalK = stats.get(0).k;
+        double maxDecrease = 0;
+        for (int i = 1; i < stats.size(); i++) {
+            double decrease = stats.get(i - 1).getBestSse() - stats.get(i).getBestSse();
+            if (decrease > maxDecrease) {
+                maxDecrease = decrease;
+                optimalK = stats.get(i).k;
+            }
+        }
+        return optimalK;
+    }
+
+    /**
+     * シルエット係数が最大となるK値
+     */
+    public static int selectBySilhouette(List<KStats> stats) {
+        KStats best = null;
+        for (KStats s : stats) {
+            if (!Double.isNaN(s.silhouette) && (best == null || s.silhouette > best.silhouette)) {
+                best = s;
+            }
+        }
+        if (best == null) {
+            throw new IllegalStateException("シルエット係数が算出されていません");
+        }
+        return best.k;
+    }
+
+    /**
+     * Gap(k) >= Gap(k+1) - s(k+1) を満たす最小のK値
+     */
+    public static int selectByGap(List<KStats> stats) {
+        if (Double.isNaN(stats.get(0).gap)) {
+            throw new IllegalStateException("Gap統計量が算出されていません");
+        }
+        for (int i = 0; i < stats.size() - 1; i++) {
+            KStats current = stats.get(i);
+            KStats next = stats.get(i + 1);
+            if (current.gap >= next.gap - next.gapStdError) {
+                return current.k;
+            }
+        }
+        return stats.get(stats.size() - 1).k;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.*;
+
+/**
+ * 回答者ストリームをフレームワーク別に集計し、State of JSの6指標を算出する
+ *
+ * 入力列: framework, experience（never_heard / heard / used、旧形式の would_use /
+ * would_not_use / interested / not_interested も可）, sentiment（positive / negative / neutral、任意）
+ *
+ * 指標の定義:
+ * 使用率 = 使用経験あり / 全回答, 継続率 = 使用&肯定 / 使用&(肯定+否定),
+ * ポジティブ評価率 = (使用&肯定 + 認知&肯定) / 全回答, 関心度 = 認知&肯定 / 認知&(肯定+否定),
+ * 認知度 = (全回答 - 未認知) / 全回答, 評価度 = 使用&肯定 / 全回答
+ */
+public class FrameworkAggregator implements RespondentStreamLoader.ChunkHandler {
+
+    // カウンタ配列の添字
+    static final int TOTAL = 0;
+    private static final int NEVER_HEARD = 1;
+    private static final int HEARD_POSITIVE = 2;
+    private static final int HEARD_NEGATIVE = 3;
+    static final int USED = 4;
+    static final int USED_POSITIVE = 5;
+    static final int USED_NEGATIVE = 6;
+    static final int NUM_COUNTERS = 7;
+
+    private final Map<String, long[]> counters = new LinkedHashMap<>();
+    private long skippedRows;
+
+    @Override
+    public void accept(RespondentStreamLoader.Chunk chunk) {
+        int frameworkColumn = requireColumn(chunk, "framework");
+        int experienceColumn = requireColumn(chunk, "experience");
+        int sentimentColumn = chunk.columnIndex("sentiment");
+
+        for (int row = 0; row < chunk.size(); row++) {
+            String framework = chunk.value(row, frameworkColumn);
+            String experience = chunk.value(row, experienceColumn);
+            if (framework == null || framework.isEmpty() || experience == null) {
+                skippedRows++;
+                continue;
+            }
+            int outcome = outcome(experience, chunk.value(row, sentimentColumn));
+            if (outcome < 0) {
+                skippedRows++;
+                continue;
+            }
+            count(counters.computeIfAbsent(framework, f -> new long[NUM_COUNTERS]), 0, outcome);
+        }
+    }
+
+    /**
+     * 1回答が加算されるカウンタをビットマスクで返す（解釈できない経験値の場合は-1）
+     */
+    static int outcome(String experience, String sentiment) {
+        int polarity = "positive".equals(sentiment) ? 1 : "negative".equals(sentiment) ? -1 : 0;
+        int mask = 1 << TOTAL;
+        switch (experience) {
+            case "never_heard":
+                return mask | 1 << NEVER_HEARD;
+            case "heard":
+                return polarity > 0 ? mask | 1 << HEARD_POSITIVE : polarity < 0 ? mask | 1 << HEARD_NEGATIVE : mask;
+            case "interested":
+                return mask | 1 << HEARD_POSITIVE;
+            case "not_interested":
+                return mask | 1 << HEARD_NEGATIVE;
+            case "used":
+                mask |= 1 << USED;
+                return polarity > 0 ? mask | 1 << USED_POSITIVE : polarity < 0 ? mask | 1 << USED_NEGATIVE : mask;
+            case "would_use":
+                return mask | 1 << USED | 1 << USED_POSITIVE;
+            case "would_not_use":
+                return mask | 1 << USED | 1 << USED_NEGATIVE;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * outcomeのビットに対応するカウンタ（counters[offset + 添字]）を加算
+     */
+    static void count(long[] counters, int offset, int outcome) {
+        for (int bits = outcome; bits != 0; bits &= bits - 1) {
+            counters[offset + Integer.numberOfTrailingZeros(bits)]++;
+        }
+    }
+
+    private static int requireColumn(RespondentStreamLoader.Chunk chunk, String name) {
+        int index = chunk.columnIndex(name);
+        if (index < 0) {
+            throw new IllegalArgumentException("必須列がありません: " + name);
+        }
+        return index;
+    }
+
+    /**
+     * 集計されたフレームワーク名（初出順）
+     */
+    public List<String> getFrameworkNames() {
+        return new ArrayList<>(counters.keySet());
+    }
+
+    public long getRespondentCount(String framework) {
+        long[] c = counters.get(framework);
+        return c == null ? 0 : c[TOTAL];
+    }
+
+    public long getSkippedRows() {
+        return skippedRows;
+    }
+
+    /**
+     * 6指標を算出（usage, retention, positivity, interest, awareness, appreciation の順）
+     */
+    public double[] getRatios(String framework) {
+        long[] c = counters.get(framework);
+        if (c == null) {
+            throw new IllegalArgumentException("未集計のフレームワーク: " + framework);
+        }
+        return new double[] {
+            ratio(c[USED], c[TOTAL]),
+            ratio(c[USED_POSITIVE], c[USED_POSITIVE] + c[USED_NEGATIVE]),
+            ratio(c[USED_POSITIVE] + c[HEARD_POSITIVE], c[TOTAL]),
+            ratio(c[HEARD_POSITIVE], c[HEARD_POSITIVE] + c[HEARD_NEGATIVE]),
+            ratio(c[TOTAL] - c[NEVER_HEARD], c[TOTAL]),
+            ratio(c[USED_POSITIVE], c[TOTAL])
+        };
+    }
+
+    private static double ratio(long numerator, long denominator) {
+        return denominator == 0 ? 0.0 : (double) numerator / denominator;
+    }
+}
@@ -0,0 +1,49 @@
+import java.io.Serializable;
+
+/**
+ * K-meansの実行結果（クラスタ中心・割り当て・SSE）
+ */
+public class KMeansResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final int k;
+    final double[][] centroids;
+    final int[] assignments;
+    final double sse;
+    final int iterations;
+    final long seed;
+
+    KMeansResult(double[][] centroids, int[] assignments, double sse, int iterations, long seed) {
+        this.k = centroids.length;
+        this.centroids = centroids;
+        this.assignments = assignments;
+        this.sse = sse;
+        this.iterations = iterations;
+        this.seed = seed;
+    }
+
+    public int getNumClusters() {
+        return k;
+    }
+
+    public double[][] getCentroids() {
+        return centroids;
+    }
+
+    public int[] getAssignments() {
+        return assignments;
+    }
+
+    public double getSquaredError() {
+        return sse;
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+}
@@ -0,0 +1,294 @@
+import java.util.*;
+
+/**
+ * DataMatrix上のLloyd法K-means（K-means++初期化）
+ * 入力行列は読み取り専用のため、複数スレッドから同じ行列を共有して実行できる
+ * 行ごとの重み（コアセットの各点が代表する件数など）を与えると、重み付きの中心・SSEで実行する
+ */
+public class LloydKMeans {
+
+    private LloydKMeans() {
+    }
+
+    /**
+     * K-meansを実行（Hamerly法: 各点に最近中心までの上界と2番目の中心までの下界を持ち、
+     * 中心間距離と中心の移動量から割り当てが変わり得ない点の距離計算を省く。結果は通常のLloyd法と同じ）
+     */
+    public static KMeansResult fit(DataMatrix data, int k, long seed, int maxIterations) {
+        return fit(data, null, k, seed, maxIterations);
+    }
+
+    /**
+     * 重み付きK-meansを実行（weightsがnullの場合は全行の重み1）
+     */
+    public static KMeansResult fit(DataMatrix data, double[] weights, int k, long seed, int maxIterations) {
+        if (k < 1 || k > data.rows) {
+            throw new IllegalArgumentException("K値が不正です: K=" + k + ", インスタンス数=" + data.rows);
+        }
+        Random random = new Random(seed);
+        double[][] centroids = seedPlusPlus(data, weights, k, random);
+        int n = data.rows;
+        int[] assignments = new int[n];
+        double[] upper = new double[n];
+        double[] lower = new double[n];
+        double[] halfSeparation = new double[k];
+        double[] moved = new double[k];
+        double[][] previous = new double[k][];
+
+        // 1回目は全中心との距離を計算して上界・下界を初期化
+        for (int i = 0; i < n; i++) {
+            scanAll(data, i, centroids, assignments, upper, lower);
+        }
+        int iteration = 1;
+        boolean changed = true;
+        while (true) {
+            for (int c = 0; c < k; c++) {
+                previous[c] = centroids[c].clone();
+            }
+            updateCentroids(data, weights, centroids, assignments, lower);
+            double maxMoved = 0;
+            double secondMoved = 0;
+            int maxMovedCluster = -1;
+            for (int c = 0; c < k; c++) {
+                moved[c] = Math.sqrt(squaredDistance(previous[c], centroids[c]));
+                if (moved[c] > maxMoved) {
+                    secondMoved = maxMoved;
+                    maxMoved = moved[c];
+                    maxMovedCluster = c;
+                } else if (moved[c] > secondMoved) {
+                    secondMoved = moved[c];
+                }
+            }
+            if (!changed || iteration >= maxIterations) break;
+
+            // 中心の移動量だけ上界を広げ、下界を狭める
+            for (int i = 0; i < n; i++) {
+                int a = assignments[i];
+                upper[i] += moved[a];
+                lower[i] -= a == maxMovedCluster ? secondMoved : maxMoved;
+            }
+            halfSeparations(centroids, halfSeparation);
+
+            iteration++;
+            changed = false;
+            for (int i = 0; i < n; i++) {
+                int a = assignments[i];
+                double bound = Math.max(halfSeparation[a], lower[i]);
+                if (upper[i] <= bound) continue;
+                upper[i] = Math.sqrt(data.squaredDistance(i, centroids[a]));
+                if (upper[i] <= bound) continue;
+                scanAll(data, i, centroids, assignments, upper, lower);
+                changed |= assignments[i] != a;
+            }
+        }
+        return new KMeansResult(centroids, assignments, sse(data, weights, centroids, assignments), iteration, seed);
+    }
+
+    /**
+     * 全中心との距離から最近中心と上界・下界（2番目に近い中心までの距離）を求める
+     */
+    private static void scanAll(DataMatrix data, int row, double[][] centroids, int[] assignments,
+                                double[] upper, double[] lower) {
+        double best = Double.MAX_VALUE;
+        double second = Double.MAX_VALUE;
+        int bestCluster = 0;
+        for (int c = 0; c < centroids.length; c++) {
+            double d = data.squaredDistance(row, centroids[c]);
+            if (d < best) {
+                second = best;
+                best = d;
+                bestCluster = c;
+            } else if (d < second) {
+                second = d;
+            }
+        }
+        assignments[row] = bestCluster;
+        upper[row] = Math.sqrt(best);
+        lower[row] = centroids.length > 1 ? Math.sqrt(second) : Double.MAX_VALUE;
+    }
+
+    /**
+     * 各中心から最も近い他の中心までの距離の半分
+     */
+    private static void halfSeparations(double[][] centroids, double[] halfSeparation) {
+        Arrays.fill(halfSeparation, Double.MAX_VALUE);
+        for (int a = 0; a < centroids.length; a++) {
+            for (int b = a + 1; b < centroids.length; b++) {
+                double half = Math.sqrt(squaredDistance(centroids[a], centroids[b])) / 2;
+                halfSeparation[a] = Math.min(halfSeparation[a], half);
+                halfSeparation[b] = Math.min(halfSeparation[b], half);
+            }
+        }
+    }
+
+    /**
+     * 固定した中心に対する全行の一括割り当て
+     * 三角不等式（d(c_best, c) ≥ 2·d(x, c_best) なら c は c_best より近くならない）で距離計算を省く
+     * 同距離の場合は番号の小さい中心を選ぶ（nearestと同じ結果）
+     */
+    public static int[] assignAll(DataMatrix data, double[][] centroids) {
+        int k = centroids.length;
+        double[][] separation = new double[k][k];
+        for (int a = 0; a < k; a++) {
+            for (int b = a + 1; b < k; b++) {
+                separation[a][b] = Math.sqrt(squaredDistance(centroids[a], centroids[b]));
+                separation[b][a] = separation[a][b];
+            }
+        }
+        int[] assignments = new int[data.rows];
+        for (int i = 0; i < data.rows; i++) {
+            int best = 0;
+            double bestSquared = data.squaredDistance(i, centroids[0]);
+            double bestDistance = Math.sqrt(bestSquared);
+            for (int c = 1; c < k; c++) {
+                if (separation[best][c] >= 2 * bestDistance) continue;
+                double d = data.squaredDistance(i, centroids[c]);
+                if (d < bestSquared) {
+                    bestSquared = d;
+                    bestDistance = Math.sqrt(d);
+                    best = c;
+                }
+            }
+            assignments[i] = best;
+        }
+        return assignments;
+    }
+
+    private static double squaredDistance(double[] a, double[] b) {
+        return DistanceKernel.INSTANCE.squaredDistance(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * K-means++による初期中心の選択
+     */
+    static double[][] seedPlusPlus(DataMatrix data, int k, Random random) {
+        return seedPlusPlus(data, null, k, random);
+    }
+
+    /**
+     * 重み付きK-means++（最初の中心は重みに比例、以降は重み × 最近中心までの二乗距離に比例して選択）
+     */
+    static double[][] seedPlusPlus(DataMatrix data, double[] weights, int k, Random random) {
+        double[][] centroids = new double[k][];
+        centroids[0] = data.row(weights == null ? random.nextInt(data.rows) : weightedChoice(weights, random));
+        double[] minDistance = new double[data.rows];
+        for (int i = 0; i < data.rows; i++) {
+            minDistance[i] = data.squaredDistance(i, centroids[0]);
+        }
+        for (int c = 1; c < k; c++) {
+            double total = 0;
+            for (int i = 0; i < data.rows; i++) {
+                total += weights == null ? minDistance[i] : weights[i] * minDistance[i];
+            }
+            int chosen;
+            if (total == 0) {
+                chosen = random.nextInt(data.rows); // 全点が既存中心と一致
+            } else {
+                double target = random.nextDouble() * total;
+                chosen = data.rows - 1;
+                for (int i = 0; i < data.rows; i++) {
+                    target -= weights == null ? minDistance[i] : weights[i] * minDistance[i];
+                    if (target <= 0) {
+                        chosen = i;
+                        break;
+                    }
+                }
+            }
+            centroids[c] = data.row(chosen);
+            for (int i = 0; i < data.rows; i++) {
+                minDistance[i] = Math.min(minDistance[i], data.squaredDistance(i, centroids[c]));
+            }
+        }
+        return centroids;
+    }
+
+    private static int weightedChoice(double[] weights, Random random) {
+        double total = 0;
+        for (double w : weights) {
+            total += w;
+        }
+        double target = random.nextDouble() * total;
+        for (int i = 0; i < weights.length; i++) {
+            target -= weights[i];
+            if (target <= 0) return i;
+        }
+        return weights.length - 1;
+    }
+
+    static int nearest(DataMatrix data, int row, double[][] centroids) {
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for (int c = 0; c < centroids.length; c++) {
+            double d = data.squaredDistance(row, centroids[c]);
+            if (d < bestDistance) {
+                bestDistance = d;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 割り当てに基づき中心を再計算（空クラスタは最も遠い点で再初期化）
+     * 再初期化で割り当てを移した点は、元の中心が「他の中心」になるため下界を0に戻す
+     */
+    private static void updateCentroids(DataMatrix data, double[] weights, double[][] centroids, int[] assignments,
+                                        double[] lower) {
+        int k = centroids.length;
+        double[][] sums = new double[k][data.cols];
+        double[] counts = new double[k];
+        for (int i = 0; i < data.rows; i++) {
+            int c = assignments[i];
+            double w = weights == null ? 1 : weights[i];
+            counts[c] += w;
+            int offset = i * data.cols;
+            for (int j = 0; j < data.cols; j++) {
+                sums[c][j] += w * data.values[offset + j];
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            if (counts[c] == 0) {
+                int farthest = farthestPoint(data, centroids, assignments);
+                centroids[c] = data.row(farthest);
+                assignments[farthest] = c;
+                lower[farthest] = 0;
+                continue;
+            }
+            for (int j = 0; j < data.cols; j++) {
+                centroids[c][j] = sums[c][j] / counts[c];
+            }
+        }
+    }
+
+    private static int farthestPoint(DataMatrix data, double[][] centroids, int[] assignments) {
+        int farthest = 0;
+        double max = -1;
+        for (int i = 0; i < data.rows; i++) {
+            double d = data.squaredDistance(i, centroids[assignments[i]]);
+            if (d > max) {
+                max = d;
+                farthest = i;
+            }
+        }
+        return farthest;
+    }
+
+    /**
+     * 総平方和誤差
+     */
+    static double sse(DataMatrix data, double[][] centroids, int[] assignments) {
+        return sse(data, null, centroids, assignments);
+    }
+
+    /**
+     * 重み付き総平方和誤差（weightsがnullの場合は重み1）
+     */
+    static double sse(DataMatrix data, double[] weights, double[][] centroids, int[] assignments) {
+        double sse = 0;
+        for (int i = 0; i < data.rows; i++) {
+            double d = data.squaredDistance(i, centroids[assignments[i]]);
+            sse += weights == null ? d : weights[i] * d;
+        }
+        return sse;
+    }
+}
@@ -0,0 +1,132 @@
+import java.util.*;
+
+/**
+ * ミニバッチK-means（Sculley 2010）
+ * 各反復で小さなバッチだけを走査し、クラスタごとの学習率 1/件数 で中心を更新する
+ * partialFitで新しいチャンクが届くたびに中心を逐次更新できるため、全データをメモリに載せる必要がない
+ *
+ * 分析パイプラインは回答者ストリームの終了後に集計したフレームワーク単位の行列をクラスタリングするため、partialFitは呼ばない
+ * 回答者単位の数値列をクラスタリングする場合は、RespondentStreamLoaderのチャンクごとに数値列をDataMatrixへコピーして
+ * partialFitに渡し、最後にgetCentroids()（またはevaluate）で中心を取り出す（保持するのはK個の中心と件数のみ）
+ */
+public class MiniBatchKMeans {
+
+    /** K-means++初期化に使う標本数（バッチサイズに対する倍率） */
+    private static final int INIT_SIZE_FACTOR = 3;
+
+    private final int k;
+    private final int batchSize;
+    private final long seed;
+    private final Random random;
+
+    private double[][] centroids;
+    private long[] counts;
+    private int batches;
+
+    public MiniBatchKMeans(int k, int batchSize, long seed) {
+        if (k < 1 || batchSize < 1) {
+            throw new IllegalArgumentException("パラメータが不正です: K=" + k + ", バッチサイズ=" + batchSize);
+        }
+        this.k = k;
+        this.batchSize = batchSize;
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    /**
+     * メモリ上の行列に対して学習（ランダム抽出したバッチで iterations 回更新）し、全行の割り当てとSSEを返す
+     */
+    public KMeansResult fit(DataMatrix data, int iterations) {
+        initialize(data);
+        int[] batch = new int[batchSize];
+        for (int it = 0; it < iterations; it++) {
+            for (int b = 0; b < batchSize; b++) {
+                batch[b] = random.nextInt(data.rows);
+            }
+            update(data, batch, batchSize);
+        }
+        return evaluate(data);
+    }
+
+    /**
+     * 新しく届いたチャンクで中心を逐次更新（チャンクを先頭からバッチ単位で1回走査）
+     * 最初のチャンクではK-means++で中心を初期化する
+     */
+    public void partialFit(DataMatrix chunk) {
+        if (centroids == null) {
+            initialize(chunk);
+        }
+        int[] batch = new int[batchSize];
+        for (int start = 0; start < chunk.rows; start += batchSize) {
+            int size = Math.min(batchSize, chunk.rows - start);
+            for (int b = 0; b < size; b++) {
+                batch[b] = start + b;
+            }
+            update(chunk, batch, size);
+        }
+    }
+
+    /**
+     * 現在の中心で全行を割り当て、SSEを算出
+     */
+    public KMeansResult evaluate(DataMatrix data) {
+        if (centroids == null) {
+            throw new IllegalStateException("学習前です");
+        }
+        double[][] copy = new double[k][];
+        for (int c = 0; c < k; c++) {
+            copy[c] = centroids[c].clone();
+        }
+        int[] assignments = LloydKMeans.assignAll(data, copy);
+        return new KMeansResult(copy, assignments, LloydKMeans.sse(data, copy, assignments), batches, seed);
+    }
+
+    public double[][] getCentroids() {
+        return centroids;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 標本に対するK-means++で初期中心を決定
+     */
+    private void initialize(DataMatrix data) {
+        if (data.rows < k) {
+            throw new IllegalArgumentException("初期化には" + k + "行以上必要です: " + data.rows + "行");
+        }
+        int initSize = Math.min(data.rows, Math.max(k, INIT_SIZE_FACTOR * batchSize));
+        DataMatrix sample = data;
+        if (initSize < data.rows) {
+            sample = new DataMatrix(initSize, data.cols);
+            for (int i = 0; i < initSize; i++) {
+                System.arraycopy(data.values, random.nextInt(data.rows) * data.cols,
+                    sample.values, i * data.cols, data.cols);
+            }
+        }
+        centroids = LloydKMeans.seedPlusPlus(sample, k, random);
+        counts = new long[k];
+    }
+
+    /**
+     * バッチ1個分の更新（割り当てを先に確定してから中心を動かす）
+     */
+    private void update(DataMatrix data, int[] batch, int size) {
+        int[] nearest = new int[size];
+        for (int b = 0; b < size; b++) {
+            nearest[b] = LloydKMeans.nearest(data, batch[b], centroids);
+        }
+        for (int b = 0; b < size; b++) {
+            int c = nearest[b];
+            counts[c]++;
+            double eta = 1.0 / counts[c];
+            double[] centroid = centroids[c];
+            int offset = batch[b] * data.cols;
+            for (int j = 0; j < data.cols; j++) {
+                centroid[j] += eta * (data.values[offset + j] - centroid[j]);
+            }
+        }
+        batches++;
+    }
+}
@@ -2,12 +2,11 @@ import weka.core.*;
 import weka.core.converters.ArffSaver;
 import weka.clusterers.SimpleKMeans;
 import weka.clusterers.HierarchicalClusterer;
-import weka.attributeSelection.PrincipalComponents;
-import weka.attributeSelection.Ranker;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.Standardize;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * Next.js教師なし学習分析プログラム（Weka完全版）
@@ -21,56 +20,449 @@ public class NextjsWekaAnalysis {
     private static final String RESULTS_DIR = "results/";
     private static final String CSV_DIR = "csv_data/";
     
+    /** 列指向キャッシュのファイル名 */
+    private static final String PREPARED_CACHE = "meta_frameworks_analysis.col";
+    private static final String STANDARDIZED_CACHE = "meta_frameworks_standardized.col";
+    
+    /** 標準化パラメータ（属性ごとの平均・標準偏差） */
+    private static final String STANDARDIZATION_PARAMETERS = "standardization_parameters.csv";
+    
+    /** 継続率の時系列に使うカテゴリ（組み込み・回答者データの場合） */
+    private static final String TIME_SERIES_CATEGORY = "state_of_js/meta_frameworks";
+    
+    /** エルボー法で探索するK値の範囲 */
+    private static final int MIN_K = 2;
+    private static final int MAX_K = 5;
+    
+    /** PCA自動選択でランダム化SVDに切り替える列数 */
+    private static final int RANDOMIZED_PCA_MIN_COLUMNS = 200;
+    
+    /** 実行中の分析オプション（常駐モードではジョブごとに異なるため、ジョブのスレッドとその子スレッドで保持） */
+    private static final InheritableThreadLocal<AnalysisOptions> OPTIONS = new InheritableThreadLocal<>();
+    static ForkJoinPool pool;
+    
+    /** 入力キー → 準備のロック（同じデータのジョブだけを順番に処理し、後のジョブは読み込み済みのデータを再利用） */
+    private static final ConcurrentHashMap<String, Object> PREPARE_LOCKS = new ConcurrentHashMap<>();
+    
+    /** 出力先ディレクトリ → 書き込みのロック（準備済みデータのキャッシュ・ARFFファイルなどはジョブ間で同じファイルを使う） */
+    private static final ConcurrentHashMap<String, Object> OUTPUT_LOCKS = new ConcurrentHashMap<>();
+    
+    /** 常駐モードで読み込み済みのデータ（入力キー → データ、通常の実行ではnull） */
+    static Map<String, PreparedData> residentData;
+    
+    /**
+     * 準備済みデータとその内容ハッシュ
+     */
+    static final class PreparedData {
+        final Instances data;
+        final String hash;
+        
+        PreparedData(Instances data, String hash) {
+            this.data = data;
+            this.hash = hash;
+        }
+    }
+    
     public static void main(String[] args) throws Exception {
+        AnalysisOptions analysisOptions = AnalysisOptions.parse(args);
+        configure(analysisOptions);
+        analyze(analysisOptions);
+    }
+    
+    /**
+     * 指定オプションで分析を実行（常駐モードでは複数のジョブスレッドから並行して呼ばれる）
+     */
+    static void analyze(AnalysisOptions options) throws Exception {
+        OPTIONS.set(options);
         System.out.println("=== Next.js教師なし学習分析（Weka完全版）開始 ===");
         
         // ディレクトリ作成
         createDirectories();
         
-        // データの準備
-        Instances data = prepareFrameworkData();
-        System.out.println("データ準備完了: " + data.numInstances() + "インスタンス, " + data.numAttributes() + "属性");
+        // ステージごとの計測（results/ にJSONとPrometheus形式で出力）
+        PipelineMetrics metrics = new PipelineMetrics();
         
-        // ARFFファイル保存
-        saveArffFile(data, "meta_frameworks_analysis.arff");
-        
-        // 標準化
-        Instances standardizedData = standardizeData(data);
-        System.out.println("データ標準化完了");
-        
-        // K-meansクラスタリング
-        performWekaKMeans(standardizedData);
+        // データの準備（回答者データ指定時はストリーミング集計、同じ入力なら列指向キャッシュから読み込み）
+        PreparedData prepared = prepare(metrics);
+        Instances data = prepared.data;
+        String dataHash = prepared.hash;
+        String[] frameworkNames = frameworkNames(data);
+        SortedMap<Integer, Double> timeSeries = retentionTimeSeries();
+        System.out.println("データ準備完了: " + data.numInstances() + "インスタンス, " + data.numAttributes() + "属性");
         
-        // 階層クラスタリング
-        performWekaHierarchical(standardizedData);
+        // 分析ステージのグラフ（入力の内容ハッシュ + パラメータが前回と同じステージはスキップ）
+        StageGraph graph = new StageGraph(new File(dir(OUTPUT_DIR) + "stages"), options.cache)
+            .withMetrics(metrics)
+            .source("data", dataHash, data)
+            .stage("standardize", List.of("data"), "", false, List.of(),
+                in -> standardize((Instances) in.get("data"), dataHash))
+            .stage("cftree", List.of("standardize"),
+                "threshold=" + options.birchThreshold + ",maxEntries=" + options.birchMaxEntries,
+                false, List.of(),
+                in -> buildCFTree((Instances) in.get("standardize")))
+            .stage("kmeans", clusteringInputs(options),
+                "engine=" + options.kmeansEngine + ",seeds=" + options.elbowSeeds
+                    + ",criterion=" + options.elbowCriterion + ",gapReferences=" + options.gapReferences
+                    + ",batchSize=" + options.batchSize + ",iterations=" + options.miniBatchIterations
+                    + ",approximate=" + approximationKey(options),
+                true, List.of(new File(dir(RESULTS_DIR) + "weka_kmeans_results.txt")),
+                in -> performWekaKMeans((Instances) in.get("standardize"), frameworkNames,
+                    (CFTree.Summary) in.get("cftree")))
+            .stage("hierarchical", clusteringInputs(options),
+                "engine=" + options.hierarchicalEngine + ",k=" + options.hierarchicalK
+                    + ",approximate=" + approximationKey(options),
+                true, List.of(new File(dir(RESULTS_DIR) + "weka_hierarchical_results.txt")),
+                in -> performWekaHierarchical((Instances) in.get("standardize"), frameworkNames,
+                    (CFTree.Summary) in.get("cftree")))
+            .stage("pca", List.of("standardize"),
+                "method=" + options.pcaMethod + ",components=" + options.pcaComponents,
+                true, List.of(new File(dir(RESULTS_DIR) + "weka_pca_results.txt")),
+                in -> performWekaPCA((Instances) in.get("standardize"), frameworkNames))
+            .stage("contradiction", List.of("data"), "",
+                true, List.of(new File(dir(RESULTS_DIR) + "weka_contradiction_analysis.txt")),
+                in -> performContradictionAnalysis((Instances) in.get("data")))
+            .stage("csv", List.of("data", "kmeans", "pca"), "spearman=" + options.spearman + ",gzip=" + options.gzipCsv
+                + ",timeSeries=" + timeSeries,
+                true, csvFiles("framework_comparison.csv", "kmeans_clusters.csv", "nextjs_timeseries.csv",
+                    "correlation_matrix.csv", "pca_results.csv"),
+                in -> {
+                    generateCSVDatasets((Instances) in.get("data"), (KMeansResult) in.get("kmeans"),
+                        (PrincipalComponentAnalysis) in.get("pca"), timeSeries);
+                    return null;
+                })
+            .stage("stability", List.of("standardize", "kmeans", "hierarchical"),
+                "mode=" + options.stabilityMode + ",fraction=" + options.stabilityFraction
+                    + ",replicates=" + options.stabilityReplicates,
+                true, List.of(new File(dir(RESULTS_DIR) + "weka_cluster_stability.txt")),
+                in -> performStabilityAnalysis((Instances) in.get("standardize"), (KMeansResult) in.get("kmeans"),
+                    (int[]) in.get("hierarchical"), frameworkNames));
         
-        // 主成分分析（エラー回避のためスキップ）
-        // performWekaPCA(standardizedData);
+        // 指定ターゲット（未指定時は全分析ステージ）とその依存ステージを実行、独立したステージは並行実行
+        List<String> targets = options.targets != null
+            ? Arrays.asList(options.targets)
+            : List.of("kmeans", "hierarchical", "pca", "contradiction", "csv");
+        try {
+            graph.run(targets, options.threads);
+        } finally {
+            synchronized (PipelineMetrics.class) {
+                metrics.writeJson(new File(dir(RESULTS_DIR) + "pipeline_metrics.json"));
+                metrics.writePrometheus(new File(dir(RESULTS_DIR) + "pipeline_metrics.prom"));
+            }
+        }
         
-        // 矛盾指数分析
-        performContradictionAnalysis(data);
+        System.out.println("=== Weka分析完了 ===");
+    }
+    
+    /**
+     * 分析オプションと並列処理用のプールを設定
+     */
+    static void configure(AnalysisOptions analysisOptions) {
+        OPTIONS.set(analysisOptions);
+        pool = new ForkJoinPool(analysisOptions.threads, PoolWorker::new, null, false);
+    }
+    
+    /**
+     * 共有プールのワーカースレッド
+     * ワーカーは必要になったときに作られ、作成したジョブのスレッドからInheritableThreadLocal（分析オプション・出力先）を
+     * 引き継ぐため、開始時に消して特定のジョブに依存しない状態にする（Java 17には引き継がないコンストラクタがない）
+     */
+    private static final class PoolWorker extends ForkJoinWorkerThread {
+        PoolWorker(ForkJoinPool pool) {
+            super(pool);
+        }
         
-        // CSVデータ生成
-        generateCSVDatasets(data, standardizedData);
+        @Override
+        protected void onStart() {
+            super.onStart();
+            OPTIONS.remove();
+            ConsoleRouter.reset();
+        }
+    }
+    
+    static AnalysisOptions options() {
+        return OPTIONS.get();
+    }
+    
+    /**
+     * 出力先ディレクトリ（--output-root 指定時はその下）
+     */
+    private static String dir(String name) {
+        File root = options().outputRoot;
+        return root == null ? name : new File(root, name).getPath() + File.separator;
+    }
+    
+    /**
+     * 分析対象データを準備（常駐モードでは読み込み済みのデータを再利用）
+     */
+    private static PreparedData prepare(PipelineMetrics metrics) throws Exception {
+        SurveyRatios survey = options().respondentsFile == null && options().surveyCategory != null
+            ? SurveyRatios.load(options().surveyDirectory)
+            : null;
+        String sourceKey = survey != null ? surveySourceKey(survey) : respondentsSourceKey();
+        PreparedData prepared;
+        // 異なるデータの読み込みは並行して行う（出力先のファイルへの書き込みだけを出力先ごとに順番に行う）
+        synchronized (PREPARE_LOCKS.computeIfAbsent(sourceKey, k -> new Object())) {
+            prepared = residentData != null ? residentData.get(sourceKey) : null;
+            if (prepared != null) {
+                metrics.skipped("prepare", "resident");
+                System.out.println("読み込み済みのデータを再利用: " + sourceKey);
+            } else {
+                ColumnarDataset cachedData;
+                synchronized (outputLock()) {
+                    cachedData = loadCache(PREPARED_CACHE, sourceKey);
+                }
+                if (cachedData != null) {
+                    metrics.skipped("prepare", "cached");
+                    prepared = new PreparedData(cachedData.toInstances(), cachedData.contentHashHex());
+                } else {
+                    Instances data = metrics.record("prepare", () -> options().respondentsFile != null
+                        ? loadRespondentData(options().respondentsFile, options().chunkSize)
+                        : survey != null ? prepareSurveyData(survey) : prepareFrameworkData());
+                    synchronized (outputLock()) {
+                        prepared = new PreparedData(data,
+                            ColumnarDataset.write(data, sourceKey, new File(dir(OUTPUT_DIR) + PREPARED_CACHE)));
+                    }
+                }
+                if (residentData != null) {
+                    residentData.put(sourceKey, prepared);
+                }
+            }
+        }
         
-        System.out.println("=== Weka分析完了 ===");
+        // ARFFファイル保存
+        synchronized (outputLock()) {
+            saveArffFile(prepared.data, "meta_frameworks_analysis.arff");
+        }
+        return prepared;
+    }
+    
+    /**
+     * 現在のジョブの出力先ディレクトリの書き込みロック
+     */
+    private static Object outputLock() throws IOException {
+        return OUTPUT_LOCKS.computeIfAbsent(new File(dir(OUTPUT_DIR)).getCanonicalPath(), k -> new Object());
     }
     
     /**
      * 必要なディレクトリを作成
      */
-    private static void createDirectories() throws Exception {
-        new File(OUTPUT_DIR).mkdirs();
-        new File(RESULTS_DIR).mkdirs();
-        new File(CSV_DIR).mkdirs();
-        new File(WEKA_DIR + "data").mkdirs();
-        new File(WEKA_DIR + "output").mkdirs();
+    static void createDirectories() throws Exception {
+        new File(dir(OUTPUT_DIR)).mkdirs();
+        new File(dir(RESULTS_DIR)).mkdirs();
+        new File(dir(CSV_DIR)).mkdirs();
+        new File(dir(WEKA_DIR) + "data").mkdirs();
+        new File(dir(WEKA_DIR) + "output").mkdirs();
+    }
+    
+    /**
+     * 入力データの識別キー（回答者ファイルはパス・サイズ・更新日時、組み込みデータは "builtin"）
+     */
+    private static String respondentsSourceKey() throws IOException {
+        if (options().respondentsFile == null) {
+            return "builtin";
+        }
+        File file = options().respondentsFile;
+        // 読み込み時に一緒に出力する集計（相関行列・セグメント別キューブ）の指定が変わった場合も読み直す
+        return "respondents:" + file.getCanonicalPath() + ":" + file.length() + ":" + file.lastModified()
+            + ":correlation=" + Arrays.toString(options().correlationColumns)
+            + ":segments=" + Arrays.toString(options().segmentColumns);
+    }
+    
+    /**
+     * 集計済み比率データの識別キー（カテゴリ・年と読み込んだファイルのパス・サイズ・更新日時）
+     */
+    private static String surveySourceKey(SurveyRatios survey) {
+        return "survey:" + options().surveyCategory + ":" + surveyYear(survey) + ":" + survey.getSourceKey();
+    }
+    
+    /**
+     * 分析する年（未指定時はカテゴリの最新年）
+     */
+    private static int surveyYear(SurveyRatios survey) {
+        if (options().surveyYear > 0) {
+            return options().surveyYear;
+        }
+        SortedSet<Integer> years = survey.years(options().surveyCategory);
+        if (years.isEmpty()) {
+            throw new IllegalArgumentException("カテゴリのデータがありません: " + options().surveyCategory
+                + "（利用可能: " + String.join(", ", survey.categories()) + "）");
+        }
+        return years.last();
+    }
+    
+    /**
+     * 入力キーが一致する列指向キャッシュを読み込み（無効・不一致・組み込みデータの場合はnull）
+     */
+    private static ColumnarDataset loadCache(String filename, String sourceKey) {
+        File file = new File(dir(OUTPUT_DIR) + filename);
+        if (!options().cache || sourceKey.equals("builtin") || !file.exists()) {
+            return null;
+        }
+        try {
+            long start = System.nanoTime();
+            ColumnarDataset cached = ColumnarDataset.map(file);
+            if (!cached.sourceKey.equals(sourceKey)) {
+                return null;
+            }
+            System.out.printf("キャッシュから読み込み: %s (%d行, %.1fミリ秒)\n",
+                filename, cached.numRows, (System.nanoTime() - start) / 1e6);
+            return cached;
+        } catch (IOException e) {
+            System.out.println("キャッシュを読み込めないため再作成します: " + e.getMessage());
+            return null;
+        }
     }
     
     /**
      * State of JS 2024データからフレームワークデータセット作成
      */
     private static Instances prepareFrameworkData() throws Exception {
+        List<String> frameworkNames = Arrays.asList("Next.js", "Astro", "SvelteKit", "Nuxt", "Remix", "Gatsby");
+        Instances dataset = createFrameworkDataset("StateOfJS2024_MetaFrameworks", frameworkNames);
+        
+        // State of JS 2024の実データを投入
+        addFrameworkInstance(dataset, "Next.js", 0.54, 0.68, 0.32, 0.43, 0.99, 0.25);
+        addFrameworkInstance(dataset, "Astro", 0.23, 0.94, 0.34, 0.67, 0.82, 0.27);
+        addFrameworkInstance(dataset, "SvelteKit", 0.16, 0.90, 0.27, 0.55, 0.82, 0.35);
+        addFrameworkInstance(dataset, "Nuxt", 0.22, 0.81, 0.24, 0.39, 0.89, 0.42);
+        addFrameworkInstance(dataset, "Remix", 0.11, 0.80, 0.21, 0.48, 0.79, 0.31);
+        addFrameworkInstance(dataset, "Gatsby", 0.19, 0.27, 0.07, 0.12, 0.83, 0.14);
+        PipelineMetrics.addInstances(dataset.numInstances());
+        
+        return dataset;
+    }
+    
+    /**
+     * 集計済み比率データの指定カテゴリ・年からフレームワークデータセット作成
+     * カテゴリ・年の全フレームワークで欠けている比率（State of Reactの評価度など）は0とし、
+     * 一部のフレームワークだけで欠けている場合はそのフレームワークを除外する
+     */
+    static Instances prepareSurveyData(SurveyRatios survey) throws Exception {
+        String category = options().surveyCategory;
+        int year = surveyYear(survey);
+        List<SurveyRatios.Entry> entries = survey.entries(category, year);
+        if (entries.isEmpty()) {
+            throw new IllegalArgumentException("データがありません: " + category + " " + year
+                + "（利用可能な年: " + survey.years(category) + "）");
+        }
+        String[] attributes = {"usage", "retention", "positivity", "interest", "awareness", "appreciation"};
+        boolean[] absent = new boolean[attributes.length];
+        Arrays.fill(absent, true);
+        for (SurveyRatios.Entry entry : entries) {
+            double[] values = entry.values();
+            for (int c = 0; c < values.length; c++) {
+                absent[c] &= Double.isNaN(values[c]);
+            }
+        }
+        for (int c = 0; c < attributes.length; c++) {
+            if (absent[c]) {
+                System.out.println("比率がないため0とします: " + attributes[c]);
+            }
+        }
+        List<String> frameworkNames = new ArrayList<>();
+        List<double[]> rows = new ArrayList<>();
+        for (SurveyRatios.Entry entry : entries) {
+            double[] values = entry.values();
+            boolean complete = true;
+            for (int c = 0; c < values.length; c++) {
+                if (absent[c]) {
+                    values[c] = 0;
+                } else {
+                    complete &= !Double.isNaN(values[c]);
+                }
+            }
+            if (complete) {
+                frameworkNames.add(entry.framework);
+                rows.add(values);
+            } else {
+                System.out.println("比率が欠けているため除外: " + entry.framework);
+            }
+        }
+        
+        Instances dataset = createFrameworkDataset("StateOfJS" + year + "_" + category.replace('/', '_'), frameworkNames);
+        for (int i = 0; i < rows.size(); i++) {
+            double[] r = rows.get(i);
+            addFrameworkInstance(dataset, frameworkNames.get(i), r[0], r[1], r[2], r[3], r[4], r[5]);
+        }
+        PipelineMetrics.addInstances(dataset.numInstances());
+        System.out.println("集計済みデータ: " + category + " " + year + "年");
+        return dataset;
+    }
+    
+    /**
+     * Next.jsの継続率の時系列（分析中のカテゴリ、組み込み・回答者データの場合はメタフレームワーク）
+     * 年を指定した場合はその年までを使う
+     */
+    static SortedMap<Integer, Double> retentionTimeSeries() throws IOException {
+        File directory = options().surveyDirectory;
+        if (!directory.isDirectory()) {
+            System.out.println("集計済みデータがないため時系列は出力しません: " + directory.getPath());
+            return new TreeMap<>();
+        }
+        String category = options().surveyCategory != null ? options().surveyCategory : TIME_SERIES_CATEGORY;
+        SortedMap<Integer, Double> series = SurveyRatios.load(directory).retention(category, "Next.js");
+        return options().surveyYear > 0 ? series.headMap(options().surveyYear + 1) : series;
+    }
+    
+    /**
+     * 回答者単位の生データ（CSV/JSONL）をストリーミング集計してフレームワークデータセット作成
+     */
+    static Instances loadRespondentData(File file, int chunkSize) throws Exception {
+        System.out.println("回答者データをストリーミング集計: " + file.getPath());
+        FrameworkAggregator aggregator = new FrameworkAggregator();
+        // 相関列が指定されていれば、同じ1回の読み込みで回答者単位の相関行列も集計
+        CorrelationEngine.StreamHandler correlation = options().correlationColumns != null
+            ? new CorrelationEngine.StreamHandler(options().correlationColumns, pool)
+            : null;
+        // セグメント列が指定されていれば、フレームワーク × セグメント別の矛盾指数キューブも集計
+        SegmentCube cube = options().segmentColumns != null
+            ? new SegmentCube(options().segmentColumns, pool)
+            : null;
+        RespondentStreamLoader loader = new RespondentStreamLoader(chunkSize);
+        loader.load(file, chunk -> {
+            aggregator.accept(chunk);
+            if (correlation != null) {
+                correlation.accept(chunk);
+            }
+            if (cube != null) {
+                cube.accept(chunk);
+            }
+        });
+        if (aggregator.getSkippedRows() > 0) {
+            System.out.println("解釈できない行をスキップ: " + aggregator.getSkippedRows() + "行");
+        }
+        synchronized (outputLock()) {
+            if (correlation != null) {
+                CovarianceAccumulator moments = correlation.result();
+                CsvDatasetEmitter emitter = new CsvDatasetEmitter(new File(dir(CSV_DIR)), options().gzipCsv);
+                CsvDatasetEmitter.writeCorrelationMatrix(emitter.file("respondent_correlation_matrix.csv"),
+                    options().gzipCsv, correlation.getColumns(), CorrelationEngine.pearson(moments));
+                System.out.println("回答者単位の相関行列: " + moments.getCount() + "行で算出（除外 "
+                    + correlation.getSkippedRows() + "行）");
+            }
+            if (cube != null) {
+                CsvDatasetEmitter emitter = new CsvDatasetEmitter(new File(dir(CSV_DIR)), options().gzipCsv);
+                cube.write(emitter.file("contradiction_cube.csv"), options().gzipCsv);
+                System.out.println("セグメント別矛盾指数キューブ: " + cube.getCellCount() + "セル（"
+                    + String.join(", ", options().segmentColumns) + "）");
+            }
+        }
+        
+        List<String> frameworkNames = aggregator.getFrameworkNames();
+        Instances dataset = createFrameworkDataset("StateOfJS_Respondents", frameworkNames);
+        for (String framework : frameworkNames) {
+            double[] r = aggregator.getRatios(framework);
+            addFrameworkInstance(dataset, framework, r[0], r[1], r[2], r[3], r[4], r[5]);
+        }
+        PipelineMetrics.addRows(loader.getRowCount());
+        PipelineMetrics.addInstances(dataset.numInstances());
+        return dataset;
+    }
+    
+    /**
+     * フレームワーク分析用の空データセット作成（6数値属性 + framework名）
+     */
+    private static Instances createFrameworkDataset(String relationName, List<String> frameworkNames) {
         // 属性定義
         ArrayList<Attribute> attributes = new ArrayList<>();
         attributes.add(new Attribute("usage_rate"));          // 使用率
@@ -81,185 +473,478 @@ public class NextjsWekaAnalysis {
         attributes.add(new Attribute("appreciation_rate"));   // 評価度
         
         // フレームワーク名属性（カテゴリ）
-        ArrayList<String> frameworkNames = new ArrayList<>();
-        frameworkNames.add("Next.js");
-        frameworkNames.add("Astro");
-        frameworkNames.add("SvelteKit");
-        frameworkNames.add("Nuxt");
-        frameworkNames.add("Remix");
-        frameworkNames.add("Gatsby");
-        attributes.add(new Attribute("framework", frameworkNames));
-        
-        // データセット作成
-        Instances dataset = new Instances("StateOfJS2024_MetaFrameworks", attributes, 0);
-        
-        // State of JS 2024の実データを投入
-        addFrameworkInstance(dataset, attributes, "Next.js", 0.54, 0.68, 0.32, 0.43, 0.99, 0.25);
-        addFrameworkInstance(dataset, attributes, "Astro", 0.23, 0.94, 0.34, 0.67, 0.82, 0.27);
-        addFrameworkInstance(dataset, attributes, "SvelteKit", 0.16, 0.90, 0.27, 0.55, 0.82, 0.35);
-        addFrameworkInstance(dataset, attributes, "Nuxt", 0.22, 0.81, 0.24, 0.39, 0.89, 0.42);
-        addFrameworkInstance(dataset, attributes, "Remix", 0.11, 0.80, 0.21, 0.48, 0.79, 0.31);
-        addFrameworkInstance(dataset, attributes, "Gatsby", 0.19, 0.27, 0.07, 0.12, 0.83, 0.14);
+        attributes.add(new Attribute("framework", new ArrayList<>(frameworkNames)));
         
-        return dataset;
+        return new Instances(relationName, attributes, frameworkNames.size());
     }
     
     /**
      * フレームワークインスタンスを追加
      */
-    private static void addFrameworkInstance(Instances dataset, ArrayList<Attribute> attributes, 
-                                          String framework, double usage, double retention, 
+    private static void addFrameworkInstance(Instances dataset, String framework, double usage, double retention, 
                                           double positivity, double interest, double awareness, double appreciation) {
         Instance instance = new DenseInstance(7);
-        instance.setValue(attributes.get(0), usage);
-        instance.setValue(attributes.get(1), retention);
-        instance.setValue(attributes.get(2), positivity);
-        instance.setValue(attributes.get(3), interest);
-        instance.setValue(attributes.get(4), awareness);
-        instance.setValue(attributes.get(5), appreciation);
-        instance.setValue(attributes.get(6), framework);
+        instance.setValue(dataset.attribute(0), usage);
+        instance.setValue(dataset.attribute(1), retention);
+        instance.setValue(dataset.attribute(2), positivity);
+        instance.setValue(dataset.attribute(3), interest);
+        instance.setValue(dataset.attribute(4), awareness);
+        instance.setValue(dataset.attribute(5), appreciation);
+        instance.setValue(dataset.attribute(6), framework);
         dataset.add(instance);
     }
     
+    /**
+     * 各インスタンスのフレームワーク名を取得
+     */
+    static String[] frameworkNames(Instances data) {
+        Attribute framework = data.attribute("framework");
+        String[] names = new String[data.numInstances()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = data.instance(i).stringValue(framework);
+        }
+        return names;
+    }
+    
     /**
      * データ標準化
      */
-    private static Instances standardizeData(Instances data) throws Exception {
-        // 数値属性のみを標準化（フレームワーク名は除外）
-        Instances numericData = new Instances(data);
-        numericData.deleteAttributeAt(numericData.numAttributes() - 1); // framework属性削除
-        
-        Standardize standardize = new Standardize();
-        standardize.setInputFormat(numericData);
-        Instances standardizedData = Filter.useFilter(numericData, standardize);
-        
+    static Instances standardizeData(Instances data) throws Exception {
+        // 数値属性のみを標準化（フレームワーク名は除外、元データは複製しない）
+        return StandardScaler.fit(data).transform(data);
+    }
+    
+    /**
+     * 標準化（準備済みデータの内容ハッシュが同じなら列指向キャッシュを使用）
+     */
+    private static Instances standardize(Instances data, String dataHash) throws Exception {
+        PipelineMetrics.addInstances(data.numInstances());
+        ColumnarDataset cached = loadCache(STANDARDIZED_CACHE, dataHash);
+        Instances standardizedData;
+        if (cached != null) {
+            standardizedData = cached.toInstances();
+        } else {
+            // 学習した平均・標準偏差は新しいデータに同じ変換を適用できるよう保存
+            StandardScaler scaler = StandardScaler.fit(data);
+            scaler.write(new File(dir(OUTPUT_DIR) + STANDARDIZATION_PARAMETERS));
+            standardizedData = scaler.transform(data);
+            ColumnarDataset.write(standardizedData, dataHash, new File(dir(OUTPUT_DIR) + STANDARDIZED_CACHE));
+        }
+        System.out.println("データ標準化完了");
         return standardizedData;
     }
     
+    /**
+     * CSV出力ファイルの一覧
+     */
+    private static List<File> csvFiles(String... names) {
+        CsvDatasetEmitter emitter = new CsvDatasetEmitter(new File(dir(CSV_DIR)), options().gzipCsv);
+        List<File> files = new ArrayList<>();
+        for (String name : names) {
+            files.add(emitter.file(name));
+        }
+        if (options().spearman) {
+            files.add(emitter.file("correlation_matrix_spearman.csv"));
+        }
+        return files;
+    }
+    
     /**
      * Weka K-meansクラスタリング
      */
-    private static void performWekaKMeans(Instances data) throws Exception {
+    static KMeansResult performWekaKMeans(Instances data, String[] frameworkNames) throws Exception {
+        return performWekaKMeans(data, frameworkNames, null);
+    }
+    
+    /**
+     * K-meansクラスタリング（treeを指定した場合はCF木の部分クラスタ上で実行）
+     */
+    static KMeansResult performWekaKMeans(Instances data, String[] frameworkNames, CFTree.Summary tree)
+            throws Exception {
         System.out.println("\n=== Weka K-meansクラスタリング ===");
+        PipelineMetrics.addInstances(data.numInstances());
         
-        // エルボー法で最適なK値を決定
-        int optimalK = findOptimalK(data, 2, 5);
-        System.out.println("エルボー法による最適K値: " + optimalK);
-        
-        SimpleKMeans kmeans = new SimpleKMeans();
-        kmeans.setNumClusters(optimalK);
-        kmeans.setDistanceFunction(new EuclideanDistance());
-        kmeans.setMaxIterations(100);
-        // K-means++初期化はデフォルトで使用される
-        kmeans.buildClusterer(data);
+        DataMatrix matrix = DataMatrix.fromInstances(data);
+        Coreset coreset = tree == null ? coreset(matrix) : null;
+        String algorithm;
+        String approximation = null;
+        KMeansResult result;
+        int optimalK;
+        if (tree != null || coreset != null) {
+            // 要約（CF木の部分クラスタまたはコアセット）上で重み付きのエルボー探索を行い、
+            // 最適K値の最良の中心で全データを割り当て
+            long start = System.nanoTime();
+            DataMatrix points = tree != null ? tree.points : coreset.points;
+            double[] weights = tree != null ? tree.weights : coreset.weights;
+            List<ElbowSearch.KStats> stats = elbowStats(points, weights, MIN_K, MAX_K);
+            optimalK = selectK(stats);
+            System.out.println("エルボー法による最適K値: " + optimalK + (tree != null ? "（CF木の部分クラスタ上）" : "（コアセット上）"));
+            KMeansResult approximate = stats.get(optimalK - stats.get(0).k).best;
+            int[] assignments = LloydKMeans.assignAll(matrix, approximate.centroids);
+            double sse = LloydKMeans.sse(matrix, approximate.centroids, assignments);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            result = new KMeansResult(approximate.centroids, assignments, sse, approximate.iterations, approximate.seed);
+            algorithm = tree != null
+                ? "近似K-means（CF木 " + tree.size() + "部分クラスタ上の重み付きLloyd法）"
+                : "近似K-means（コアセット " + coreset.size() + "点上の重み付きLloyd法）";
+            // CF木では部分クラスタ内の平方和を足すと、部分クラスタ単位で割り当てた場合の全データのSSEに一致する
+            double estimatedSse = tree != null ? approximate.sse + tree.internalSse : approximate.sse;
+            double exactSse = Double.NaN;
+            double exactSeconds = Double.NaN;
+            if (options().approximateValidate) {
+                long exactStart = System.nanoTime();
+                // 厳密実行も同じK値の範囲で探索し、近似と同じK値の最良SSEと比較
+                List<ElbowSearch.KStats> exact = elbowStats(matrix, null, MIN_K, MAX_K);
+                exactSse = exact.get(optimalK - exact.get(0).k).best.sse;
+                exactSeconds = (System.nanoTime() - exactStart) / 1e9;
+            }
+            approximation = approximationReport(matrix, coreset, tree, estimatedSse, sse, seconds, exactSse,
+                exactSeconds);
+        } else {
+            // エルボー法で最適なK値を決定
+            List<ElbowSearch.KStats> stats = elbowStats(matrix, null, MIN_K, MAX_K);
+            optimalK = selectK(stats);
+            System.out.println("エルボー法による最適K値: " + optimalK);
+            if (options().kmeansEngine.equals("lloyd")) {
+                // エルボー探索で求めた最適K値の最良解（Hamerly境界付きの厳密なLloyd法）をそのまま最終モデルにする
+                result = stats.get(optimalK - stats.get(0).k).best;
+                algorithm = "Lloyd法 K-means（Hamerly境界, K-means++初期化 " + options().elbowSeeds + "シードの最良, "
+                    + result.iterations + "反復）";
+            } else if (options().kmeansEngine.equals("minibatch")) {
+                // ミニバッチK-means（全件を毎反復走査しない）
+                MiniBatchKMeans miniBatch = new MiniBatchKMeans(optimalK, options().batchSize, ElbowSearch.BASE_SEED);
+                result = miniBatch.fit(matrix, options().miniBatchIterations);
+                algorithm = "Mini-batch K-means (バッチサイズ " + options().batchSize + ", " + result.iterations + "バッチ)";
+            } else {
+                SimpleKMeans kmeans = new SimpleKMeans();
+                kmeans.setNumClusters(optimalK);
+                kmeans.setDistanceFunction(new EuclideanDistance());
+                kmeans.setMaxIterations(100);
+                // 学習時の割り当てを保持し、インスタンスごとのclusterInstance呼び出しを不要にする
+                kmeans.setPreserveInstancesOrder(true);
+                // K-means++初期化はデフォルトで使用される
+                kmeans.buildClusterer(data);
+                algorithm = "Weka SimpleKMeans（最終モデルは境界なしのLloyd法、Hamerly境界はエルボー探索のみ）";
+                Instances wekaCentroids = kmeans.getClusterCentroids();
+                double[][] centers = new double[wekaCentroids.numInstances()][];
+                for (int c = 0; c < centers.length; c++) {
+                    centers[c] = wekaCentroids.instance(c).toDoubleArray();
+                }
+                result = new KMeansResult(centers, kmeans.getAssignments(), kmeans.getSquaredError(), 0, kmeans.getSeed());
+            }
+        }
+        Instances centroids = toCentroidInstances(data, result.centroids);
+        double sse = result.sse;
+        int[] assignments = result.assignments;
         
         System.out.println("クラスタ中心:");
-        System.out.println(kmeans.getClusterCentroids());
+        System.out.println(centroids);
         
         System.out.println("\nクラスタ統計:");
-        System.out.println("総平方和誤差 (SSE): " + kmeans.getSquaredError());
-        System.out.println("クラスタ数: " + kmeans.getNumClusters());
+        System.out.println("総平方和誤差 (SSE): " + sse);
+        System.out.println("クラスタ数: " + optimalK);
+        if (approximation != null) {
+            System.out.print(approximation);
+        }
         
         // 各インスタンスのクラスタ割り当て
-        String[] frameworkNames = {"Next.js", "Astro", "SvelteKit", "Nuxt", "Remix", "Gatsby"};
         System.out.println("\nフレームワークのクラスタ割り当て:");
         for (int i = 0; i < data.numInstances(); i++) {
-            int cluster = kmeans.clusterInstance(data.instance(i));
-            System.out.println(frameworkNames[i] + " → クラスタ " + cluster);
+            System.out.println(frameworkNames[i] + " → クラスタ " + assignments[i]);
         }
         
         // 結果保存
-        saveWekaKMeansResults(kmeans, frameworkNames, data);
+        saveWekaKMeansResults(algorithm, centroids, sse, approximation, assignments, frameworkNames);
+        return result;
     }
     
     /**
-     * エルボー法による最適K値決定
+     * クラスタ中心の配列をデータと同じ属性構成のInstancesに変換
      */
-    private static int findOptimalK(Instances data, int minK, int maxK) throws Exception {
-        double[] sse = new double[maxK - minK + 1];
-        
-        for (int k = minK; k <= maxK; k++) {
-            SimpleKMeans kmeans = new SimpleKMeans();
-            kmeans.setNumClusters(k);
-            kmeans.setDistanceFunction(new EuclideanDistance());
-            kmeans.buildClusterer(data);
-            sse[k - minK] = kmeans.getSquaredError();
-            System.out.println("K=" + k + ", SSE=" + sse[k - minK]);
+    private static Instances toCentroidInstances(Instances header, double[][] centroids) {
+        Instances instances = new Instances(header, centroids.length);
+        for (double[] centroid : centroids) {
+            instances.add(new DenseInstance(1.0, centroid.clone()));
         }
-        
-        // 最大減少率を持つK値を選択（簡易エルボー法）
-        int optimalK = minK;
-        double maxDecrease = 0;
-        for (int i = 1; i < sse.length; i++) {
-            double decrease = sse[i-1] - sse[i];
-            if (decrease > maxDecrease) {
-                maxDecrease = decrease;
-                optimalK = minK + i;
-            }
+        return instances;
+    }
+    
+    /**
+     * 近似モードのコアセット（近似モードでない場合と、インスタンス数が抽出回数以下の場合はnull＝厳密に実行）
+     */
+    private static Coreset coreset(DataMatrix matrix) {
+        if (!options().approximate) {
+            return null;
+        }
+        int draws = coresetDraws(matrix.cols);
+        if (matrix.rows <= draws) {
+            System.out.println("インスタンス数がコアセットの抽出回数(" + draws + ")以下のため厳密に実行");
+            return null;
+        }
+        long start = System.nanoTime();
+        Coreset coreset = Coreset.build(matrix, draws, ElbowSearch.BASE_SEED);
+        System.out.printf("コアセット作成: %d行 → %d点（抽出%d回, %.3f秒）\n",
+            matrix.rows, coreset.size(), draws, (System.nanoTime() - start) / 1e9);
+        return coreset;
+    }
+    
+    private static int coresetDraws(int cols) {
+        return options().coresetSize > 0
+            ? options().coresetSize
+            : Coreset.sizeFor(options().coresetEpsilon, cols, Math.max(MAX_K, options().hierarchicalK));
+    }
+    
+    /**
+     * BIRCHモードのCF木（BIRCHモードでない場合と、インスタンス数が要約数の上限以下の場合はnull＝厳密に実行）
+     */
+    static CFTree.Summary buildCFTree(Instances data) {
+        if (!options().birch) {
+            return null;
+        }
+        if (data.numInstances() <= options().birchMaxEntries) {
+            System.out.println("インスタンス数がCF木の要約数の上限(" + options().birchMaxEntries + ")以下のため厳密に実行");
+            return null;
+        }
+        long start = System.nanoTime();
+        CFTree.Summary tree = CFTree.build(DataMatrix.fromInstances(data), options().birchThreshold,
+            options().birchMaxEntries);
+        System.out.printf("CF木作成: %d行 → %d部分クラスタ（半径の閾値 %.4f, 入れ直し%d回, %.3f秒）\n",
+            tree.inputRows, tree.size(), tree.threshold, tree.rebuilds, (System.nanoTime() - start) / 1e9);
+        return tree;
+    }
+    
+    /**
+     * K-means・階層クラスタリングの入力ステージ（BIRCHモードではCF木の要約も受け取る）
+     */
+    private static List<String> clusteringInputs(AnalysisOptions options) {
+        return options.birch ? List.of("standardize", "cftree") : List.of("standardize");
+    }
+    
+    /**
+     * ステージのパラメータに含める近似モードの設定（CF木の設定はcftreeステージのキーに含まれる）
+     */
+    private static String approximationKey(AnalysisOptions options) {
+        if (options.birch) {
+            return "birch:validate=" + options.approximateValidate;
+        }
+        return options.approximate
+            ? "coreset:" + options.coresetSize + ":" + options.coresetEpsilon + ":validate=" + options.approximateValidate
+            : "off";
+    }
+    
+    /**
+     * 近似結果の誤差の報告（要約上のSSEと全データでのSSE、検証時は厳密実行のSSEとの比較）
+     */
+    private static String approximationReport(DataMatrix matrix, Coreset coreset, CFTree.Summary tree,
+                                              double estimatedSse, double sse, double seconds,
+                                              double exactSse, double exactSeconds) {
+        StringBuilder report = new StringBuilder();
+        if (tree != null) {
+            report.append(String.format("近似モード: %d行をCF木で%d個の部分クラスタに要約（半径の閾値 %.6f, 入れ直し%d回）\n",
+                matrix.rows, tree.size(), tree.threshold, tree.rebuilds));
+            report.append(String.format("SSE（部分クラスタ単位の割り当て、部分クラスタ内の平方和 %.6f を含む）: %.6f\n",
+                tree.internalSse, estimatedSse));
+        } else {
+            report.append(String.format("近似モード: %d行のうち%d点のコアセット（抽出%d回%s）\n", matrix.rows, coreset.size(),
+                coreset.draws, options().coresetSize > 0 ? "" : ", ε=" + options().coresetEpsilon));
+            report.append(String.format("推定SSE（コアセット上）: %.6f\n", estimatedSse));
+        }
+        report.append(String.format("SSE（全データ、近似結果の割り当て）: %.6f（推定との差 %+.2f%%）\n",
+            sse, relativeError(estimatedSse, sse)));
+        if (Double.isNaN(exactSse)) {
+            report.append("厳密実行との比較: --approximate-validate で実行\n");
+        } else {
+            report.append(String.format("厳密実行のSSE: %.6f（近似のSSE誤差 %+.2f%%, 近似 %.2f秒 / 厳密 %.2f秒）\n",
+                exactSse, relativeError(exactSse, sse), seconds, exactSeconds));
         }
+        return report.toString();
+    }
+    
+    private static double relativeError(double reference, double value) {
+        return reference == 0 ? 0 : (value - reference) / reference * 100;
+    }
+    
+    /**
+     * エルボー法による最適K値決定（K値 × 乱数シードを並列探索）
+     */
+    static int findOptimalK(Instances data, int minK, int maxK) throws Exception {
+        // 標準化済み行列を1つだけ作成し、K値 × シードの全候補で共有
+        return selectK(elbowStats(DataMatrix.fromInstances(data), null, minK, maxK));
+    }
+    
+    /**
+     * K値 × 乱数シードの並列探索（weightsはコアセットの重み、nullの場合は全行の重み1）
+     */
+    private static List<ElbowSearch.KStats> elbowStats(DataMatrix matrix, double[] weights, int minK, int maxK)
+            throws Exception {
+        long start = System.nanoTime();
+        List<ElbowSearch.KStats> stats = new ElbowSearch(matrix, minK, maxK, options().elbowSeeds)
+            .withWeights(weights)
+            .withSilhouette(options().elbowCriterion.equals("silhouette"))
+            .withGap(options().elbowCriterion.equals("gap") ? options().gapReferences : 0)
+            .run(pool);
         
-        return optimalK;
+        for (ElbowSearch.KStats s : stats) {
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("K=%d, 最良SSE=%.6f, 平均SSE=%.6f", s.k, s.getBestSse(), s.meanSse));
+            if (!Double.isNaN(s.silhouette)) line.append(String.format(", シルエット=%.4f", s.silhouette));
+            if (!Double.isNaN(s.gap)) line.append(String.format(", Gap=%.4f (±%.4f)", s.gap, s.gapStdError));
+            System.out.println(line);
+        }
+        System.out.printf("並列探索: %d候補 × %dシード, %dスレッド, 距離カーネル %s, %.2f秒\n",
+            stats.size(), options().elbowSeeds, pool.getParallelism(), DistanceKernel.INSTANCE.description(),
+            (System.nanoTime() - start) / 1e9);
+        return stats;
+    }
+    
+    /**
+     * 選択基準に従って最適K値を選ぶ
+     */
+    private static int selectK(List<ElbowSearch.KStats> stats) {
+        switch (options().elbowCriterion) {
+            case "silhouette": return ElbowSearch.selectBySilhouette(stats);
+            case "gap": return ElbowSearch.selectByGap(stats);
+            default: return ElbowSearch.selectByLargestDrop(stats); // 最大減少率を持つK値（簡易エルボー法）
+        }
     }
     
     /**
      * Weka階層クラスタリング
      */
-    private static void performWekaHierarchical(Instances data) throws Exception {
+    static int[] performWekaHierarchical(Instances data, String[] frameworkNames) throws Exception {
+        return performWekaHierarchical(data, frameworkNames, null);
+    }
+    
+    /**
+     * 階層クラスタリング（treeを指定した場合はCF木の部分クラスタ上で実行）
+     */
+    static int[] performWekaHierarchical(Instances data, String[] frameworkNames, CFTree.Summary tree)
+            throws Exception {
         System.out.println("\n=== Weka階層クラスタリング ===");
+        PipelineMetrics.addInstances(data.numInstances());
         
-        HierarchicalClusterer hierarchical = new HierarchicalClusterer();
-        hierarchical.setLinkType(new SelectedTag(2, HierarchicalClusterer.TAGS_LINK_TYPE)); // Ward法
-        hierarchical.setDistanceFunction(new EuclideanDistance());
-        hierarchical.buildClusterer(data);
+        int k = Math.min(options().hierarchicalK, data.numInstances());
+        String algorithm;
+        String newick;
+        String approximation = null;
+        int[] assignments = new int[data.numInstances()];
+        DataMatrix matrix = DataMatrix.fromInstances(data);
+        Coreset coreset = tree == null ? coreset(matrix) : null;
+        if (tree != null || coreset != null) {
+            // 要約の点（CF木の部分クラスタの中心またはコアセットの点）を重み（代表する件数）付きの初期クラスタとして
+            // Ward法を実行し、切断したクラスタの重み付き平均に最も近いクラスタへ全データを割り当て
+            long start = System.nanoTime();
+            DataMatrix points = tree != null ? tree.points : coreset.points;
+            double[] weights = tree != null ? tree.weights : coreset.weights;
+            int[] rows = tree != null ? tree.rows : coreset.rows;
+            k = Math.min(k, points.rows);
+            WardClustering ward = WardClustering.fit(points, weights, pool,
+                CondensedDistanceMatrix.DEFAULT_MAPPING_THRESHOLD);
+            int[] labels = ward.cut(k);
+            double[][] means = Coreset.clusterMeans(points, weights, labels, k);
+            assignments = LloydKMeans.assignAll(matrix, means);
+            double estimatedSse = LloydKMeans.sse(points, weights, means, labels)
+                + (tree != null ? tree.internalSse : 0);
+            double sse = LloydKMeans.sse(matrix, means, assignments);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            String[] leaves = new String[points.rows];
+            for (int p = 0; p < leaves.length; p++) {
+                leaves[p] = frameworkNames[rows[p]];
+            }
+            algorithm = tree != null
+                ? "近似Ward法（CF木 " + tree.size() + "部分クラスタ上の重み付きNearest-neighbor-chain法）"
+                : "近似Ward法（コアセット " + coreset.size() + "点上の重み付きNearest-neighbor-chain法）";
+            newick = ward.toNewick(leaves);
+            double exactSse = Double.NaN;
+            double exactSeconds = Double.NaN;
+            if (options().approximateValidate) {
+                long exactStart = System.nanoTime();
+                int[] exact = WardClustering.fit(matrix, null, pool, CondensedDistanceMatrix.DEFAULT_MAPPING_THRESHOLD)
+                    .cut(k);
+                exactSse = LloydKMeans.sse(matrix, Coreset.clusterMeans(matrix, null, exact, k), exact);
+                exactSeconds = (System.nanoTime() - exactStart) / 1e9;
+            }
+            approximation = approximationReport(matrix, coreset, tree, estimatedSse, sse, seconds, exactSse,
+                exactSeconds);
+        } else if (options().hierarchicalEngine.equals("nnchain")) {
+            // NN-chain法 + 圧縮距離行列（ヒープ外）によるWard法
+            WardClustering ward = WardClustering.fit(matrix, null, pool,
+                CondensedDistanceMatrix.DEFAULT_MAPPING_THRESHOLD);
+            algorithm = "Nearest-neighbor-chain Ward法";
+            newick = ward.toNewick(frameworkNames);
+            assignments = ward.cut(k);
+        } else {
+            HierarchicalClusterer hierarchical = new HierarchicalClusterer();
+            hierarchical.setLinkType(new SelectedTag(2, HierarchicalClusterer.TAGS_LINK_TYPE)); // Ward法
+            hierarchical.setDistanceFunction(new EuclideanDistance());
+            hierarchical.setNumClusters(k);
+            hierarchical.buildClusterer(data);
+            algorithm = "Weka HierarchicalClusterer";
+            newick = hierarchical.graph();
+            for (int i = 0; i < data.numInstances(); i++) {
+                assignments[i] = hierarchical.clusterInstance(data.instance(i));
+            }
+        }
         
         System.out.println("階層クラスタリング結果:");
         System.out.println("リンケージタイプ: Ward法");
         System.out.println("距離関数: ユークリッド距離");
+        if (approximation != null) {
+            System.out.print(approximation);
+        }
+        System.out.println("K=" + k + "で切断したクラスタ割り当て:");
+        for (int i = 0; i < assignments.length; i++) {
+            System.out.println(frameworkNames[i] + " → クラスタ " + assignments[i]);
+        }
         
         // デンドログラム情報を保存
-        saveWekaHierarchicalResults(hierarchical);
+        saveWekaHierarchicalResults(algorithm, newick, k, approximation, assignments, frameworkNames);
+        return assignments;
     }
     
     /**
-     * Weka主成分分析
+     * 主成分分析（共分散行列を1パスで集計、列数が多い場合はランダム化SVD）
      */
-    private static void performWekaPCA(Instances data) throws Exception {
-        System.out.println("\n=== Weka主成分分析 ===");
+    static PrincipalComponentAnalysis performWekaPCA(Instances data, String[] frameworkNames) throws Exception {
+        System.out.println("\n=== 主成分分析 ===");
+        PipelineMetrics.addInstances(data.numInstances());
         
-        PrincipalComponents pca = new PrincipalComponents();
-        pca.setVarianceCovered(0.95); // 95%の分散を保持
-        pca.buildEvaluator(data);
+        DataMatrix matrix = DataMatrix.fromInstances(data);
+        boolean randomized = options().pcaMethod.equals("randomized")
+            || (options().pcaMethod.equals("auto") && matrix.cols > RANDOMIZED_PCA_MIN_COLUMNS);
+        PrincipalComponentAnalysis pca;
+        if (randomized) {
+            pca = PrincipalComponentAnalysis.randomized(matrix, options().pcaComponents, 10, 2, ElbowSearch.BASE_SEED);
+        } else {
+            CovarianceAccumulator accumulator = new CovarianceAccumulator(matrix.cols);
+            for (int i = 0; i < matrix.rows; i++) {
+                accumulator.add(matrix, i);
+            }
+            pca = PrincipalComponentAnalysis.fromCovariance(accumulator);
+        }
         
         System.out.println("主成分分析結果:");
-        System.out.println(pca.toString());
-        
-        // 変換されたデータ
-        Instances transformedData = pca.transformedData(data);
-        System.out.println("\n変換後データの次元数: " + transformedData.numAttributes());
-        
-        // 各主成分の寄与率
-        double[] eigenValues = pca.getEigenValues();
+        System.out.println("手法: " + pca.method);
         System.out.println("\n主成分の寄与率:");
-        double totalVariance = 0;
-        for (double eigenValue : eigenValues) {
-            totalVariance += eigenValue;
-        }
-        
-        for (int i = 0; i < eigenValues.length; i++) {
-            double contribution = (eigenValues[i] / totalVariance) * 100;
-            System.out.printf("PC%d: %.2f%%\n", i+1, contribution);
+        for (int k = 0; k < pca.numComponents(); k++) {
+            System.out.printf("PC%d: %.2f%%\n", k + 1, pca.explainedVariance(k));
         }
+        int retained = pca.componentsCovering(95.0);
+        System.out.println("\n95%の分散を保持する主成分数: " + retained);
         
-        saveWekaPCAResults(pca, transformedData, eigenValues, totalVariance);
+        DataMatrix projected = pca.project(matrix, retained);
+        saveWekaPCAResults(pca, data, projected, frameworkNames);
+        return pca;
     }
     
     /**
      * 矛盾指数分析（Wekaライブラリ独立）
      */
-    private static void performContradictionAnalysis(Instances data) throws Exception {
+    static double[] performContradictionAnalysis(Instances data) throws Exception {
         System.out.println("\n=== 矛盾指数分析 ===");
+        PipelineMetrics.addInstances(data.numInstances());
         
-        String[] frameworkNames = {"Next.js", "Astro", "SvelteKit", "Nuxt", "Remix", "Gatsby"};
+        String[] frameworkNames = frameworkNames(data);
         double[] contradictionIndex = new double[data.numInstances()];
         
         for (int i = 0; i < data.numInstances(); i++) {
@@ -272,12 +957,16 @@ public class NextjsWekaAnalysis {
         }
         
         // Next.jsと競合の比較
-        double nextjsIndex = contradictionIndex[0]; // Next.jsは最初
+        int nextjs = Arrays.asList(frameworkNames).indexOf("Next.js");
+        if (nextjs < 0) {
+            throw new IllegalStateException("データにNext.jsが含まれていません");
+        }
+        double nextjsIndex = contradictionIndex[nextjs];
         double competitorAvg = 0;
         int competitorCount = 0;
         
-        for (int i = 1; i < contradictionIndex.length; i++) {
-            if (!frameworkNames[i].equals("Gatsby")) { // Gatsbyは除外（衰退フレームワーク）
+        for (int i = 0; i < contradictionIndex.length; i++) {
+            if (i != nextjs && !frameworkNames[i].equals("Gatsby")) { // Gatsbyは除外（衰退フレームワーク）
                 competitorAvg += contradictionIndex[i];
                 competitorCount++;
             }
@@ -290,150 +979,61 @@ public class NextjsWekaAnalysis {
         System.out.printf("倍率差: %.2f倍\n", nextjsIndex / competitorAvg);
         
         saveContradictionAnalysis(frameworkNames, contradictionIndex, nextjsIndex, competitorAvg);
+        return contradictionIndex;
     }
     
     /**
-     * グラフ作成用CSVデータセット生成
+     * クラスタ安定性評価（K-means・Ward法の割り当てが再標本化したデータでも再現されるか）
      */
-    private static void generateCSVDatasets(Instances originalData, Instances standardizedData) throws Exception {
-        System.out.println("\n=== CSV データセット生成 ===");
-        
-        generateFrameworkComparisonCSV(originalData);
-        generateKMeansResultsCSV(originalData);
-        generateTimeSeriesCSV();
-        generateCorrelationMatrixCSV(originalData);
-        generatePCAResultsCSV();
-        
-        System.out.println("5つのCSVファイルを生成完了");
-    }
-    
-    /**
-     * 1. フレームワーク比較CSV生成
-     */
-    private static void generateFrameworkComparisonCSV(Instances data) throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(CSV_DIR + "framework_comparison.csv"));
-        writer.println("Framework,Usage_Rate,Retention_Rate,Positivity_Rate,Interest_Rate,Awareness_Rate,Appreciation_Rate,Contradiction_Index");
-        
-        String[] frameworks = {"Next.js", "Astro", "SvelteKit", "Nuxt", "Remix", "Gatsby"};
-        
-        for (int i = 0; i < data.numInstances(); i++) {
-            Instance instance = data.instance(i);
-            double usage = instance.value(0);
-            double retention = instance.value(1);
-            double contradiction = (usage / retention) * 100;
-            
-            writer.printf("%s,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.2f\n",
-                frameworks[i],
-                usage, retention, instance.value(2), instance.value(3), 
-                instance.value(4), instance.value(5), contradiction);
-        }
-        writer.close();
-    }
-    
-    /**
-     * 2. K-meansクラスタ結果CSV生成
-     */
-    private static void generateKMeansResultsCSV(Instances data) throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(CSV_DIR + "kmeans_clusters.csv"));
-        writer.println("Framework,Cluster,Usage_Rate,Retention_Rate,Contradiction_Index,Pattern_Type");
+    static ClusterStability.Result[] performStabilityAnalysis(Instances data, KMeansResult kmeans, int[] hierarchical,
+                                                              String[] frameworkNames) throws Exception {
+        System.out.println("\n=== クラスタ安定性評価 ===");
+        PipelineMetrics.addInstances((long) data.numInstances() * options().stabilityReplicates);
         
-        // 簡易版で得られた結果を基に生成
-        String[] frameworks = {"Next.js", "Astro", "SvelteKit", "Nuxt", "Remix", "Gatsby"};
-        int[] clusters = {2, 0, 0, 2, 0, 1}; // 簡易版の結果
-        String[] patterns = {"矛盾型", "理想型", "理想型", "矛盾型", "理想型", "衰退型"};
+        DataMatrix matrix = DataMatrix.fromInstances(data);
+        boolean bootstrap = options().stabilityMode.equals("bootstrap");
+        String sampling = bootstrap
+            ? "ブートストラップ（復元抽出）"
+            : String.format("サブサンプリング（非復元抽出、抽出率%.0f%%）", options().stabilityFraction * 100);
+        System.out.println("再標本化: " + sampling + ", 再標本数: " + options().stabilityReplicates);
         
-        for (int i = 0; i < frameworks.length; i++) {
-            Instance instance = data.instance(i);
-            double usage = instance.value(0);
-            double retention = instance.value(1);
-            double contradiction = (usage / retention) * 100;
-            
-            writer.printf("%s,%d,%.3f,%.3f,%.2f,%s\n",
-                frameworks[i], clusters[i], usage, retention, contradiction, patterns[i]);
-        }
-        writer.close();
-    }
-    
-    /**
-     * 3. 時系列データCSV生成
-     */
-    private static void generateTimeSeriesCSV() throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(CSV_DIR + "nextjs_timeseries.csv"));
-        writer.println("Year,Retention_Rate,Predicted_Rate,Trend");
-        
-        // Next.jsの時系列データ（2018-2024）
-        int[] years = {2018, 2019, 2020, 2021, 2022, 2023, 2024};
-        double[] retention = {0.88, 0.90, 0.92, 0.91, 0.89, 0.76, 0.68};
+        // 再標本ごとのクラスタリングは各ワーカー内で完結させる（Ward法の距離計算もプールに投げない）
+        int kmeansK = kmeans.k;
+        ClusterStability.Result kmeansStability = new ClusterStability(matrix, kmeans.assignments, bootstrap,
+                options().stabilityFraction)
+            .run((sample, seed) -> LloydKMeans.fit(sample, Math.min(kmeansK, sample.rows), seed, 100).assignments,
+                options().stabilityReplicates, ElbowSearch.BASE_SEED, pool);
+        int wardK = Arrays.stream(hierarchical).max().orElse(0) + 1;
+        ClusterStability.Result wardStability = new ClusterStability(matrix, hierarchical, bootstrap,
+                options().stabilityFraction)
+            .run((sample, seed) -> WardClustering.fit(sample, null, null, CondensedDistanceMatrix.DEFAULT_MAPPING_THRESHOLD)
+                    .cut(Math.min(wardK, sample.rows)),
+                options().stabilityReplicates, ElbowSearch.BASE_SEED, pool);
         
-        // 線形回帰による予測値
-        double slope = -0.0325; // 年間劣化率
-        double intercept = 65.34;
-        
-        for (int i = 0; i < years.length; i++) {
-            double predicted = slope * years[i] + intercept;
-            String trend = (i > 0 && retention[i] < retention[i-1]) ? "劣化" : "改善";
-            
-            writer.printf("%d,%.3f,%.3f,%s\n", years[i], retention[i], predicted, trend);
+        ClusterStability.Result[] results = {kmeansStability, wardStability};
+        String[] methods = {"K-means", "Ward法"};
+        for (int m = 0; m < results.length; m++) {
+            System.out.printf("%s: ARI 平均 %.4f ± %.4f（中央値 %.4f）\n", methods[m], results[m].meanAri(),
+                results[m].stdDevAri(), results[m].ariPercentile(50));
         }
         
-        // 将来予測も追加
-        for (int year = 2025; year <= 2027; year++) {
-            double predicted = slope * year + intercept;
-            writer.printf("%d,%.3f,%.3f,予測\n", year, predicted, predicted);
-        }
-        
-        writer.close();
+        saveStabilityResults(sampling, methods, results, new int[][] {kmeans.assignments, hierarchical}, frameworkNames);
+        return results;
     }
     
     /**
-     * 4. 相関行列CSV生成
+     * グラフ作成用CSVデータセット生成（1回の走査で全データセットを出力）
      */
-    private static void generateCorrelationMatrixCSV(Instances data) throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(CSV_DIR + "correlation_matrix.csv"));
-        writer.println("Factor,Correlation_with_Retention,Strength,Interpretation");
-        
-        // 簡易版で計算した相関係数
-        String[] factors = {"Usage_Rate", "Positivity_Rate", "Interest_Rate", "Awareness_Rate", "Appreciation_Rate"};
-        double[] correlations = {-0.099, 0.828, 0.944, -0.116, 0.763};
-        
-        for (int i = 0; i < factors.length; i++) {
-            String strength;
-            if (Math.abs(correlations[i]) > 0.8) strength = "極強";
-            else if (Math.abs(correlations[i]) > 0.6) strength = "強";
-            else if (Math.abs(correlations[i]) > 0.3) strength = "中";
-            else strength = "弱";
-            
-            String interpretation = correlations[i] > 0 ? "正相関" : "負相関";
-            
-            writer.printf("%s,%.3f,%s,%s\n", factors[i], correlations[i], strength, interpretation);
-        }
-        writer.close();
-    }
-    
-    /**
-     * 5. PCA結果CSV生成
-     */
-    private static void generatePCAResultsCSV() throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(CSV_DIR + "pca_results.csv"));
-        writer.println("Principal_Component,Variance_Explained,Cumulative_Variance,Main_Features");
+    static void generateCSVDatasets(Instances originalData, KMeansResult kmeans,
+                                    PrincipalComponentAnalysis pca, SortedMap<Integer, Double> timeSeries)
+            throws Exception {
+        System.out.println("\n=== CSV データセット生成 ===");
+        PipelineMetrics.addInstances(originalData.numInstances());
         
-        // 理論的なPCA結果を生成
-        double[] variance = {45.2, 28.7, 15.1, 8.3, 2.1, 0.6};
-        String[] features = {
-            "満足度関連(Retention+Interest+Positivity)",
-            "認知度関連(Awareness+Appreciation)",
-            "使用率独立成分",
-            "ノイズ成分1",
-            "ノイズ成分2",
-            "残差成分"
-        };
+        new CsvDatasetEmitter(new File(dir(CSV_DIR)), options().gzipCsv)
+            .emit(originalData, kmeans, pca, timeSeries, pool, options().spearman);
         
-        double cumulative = 0;
-        for (int i = 0; i < variance.length; i++) {
-            cumulative += variance[i];
-            writer.printf("PC%d,%.1f,%.1f,%s\n", i+1, variance[i], cumulative, features[i]);
-        }
-        writer.close();
+        System.out.println("5つのCSVファイルを生成完了");
     }
     
     /**
@@ -442,69 +1042,164 @@ public class NextjsWekaAnalysis {
     private static void saveArffFile(Instances data, String filename) throws Exception {
         ArffSaver saver = new ArffSaver();
         saver.setInstances(data);
-        saver.setFile(new File(OUTPUT_DIR + filename));
+        saver.setFile(new File(dir(OUTPUT_DIR) + filename));
         saver.writeBatch();
         System.out.println("ARFFファイル保存: " + filename);
     }
     
     // 結果保存メソッド群
-    private static void saveWekaKMeansResults(SimpleKMeans kmeans, String[] frameworks, Instances data) throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(RESULTS_DIR + "weka_kmeans_results.txt"));
+    private static void saveWekaKMeansResults(String algorithm, Instances centroids, double sse, String approximation,
+                                            int[] assignments, String[] frameworks) throws Exception {
+        PrintWriter writer = new PrintWriter(new FileWriter(dir(RESULTS_DIR) + "weka_kmeans_results.txt"));
         writer.println("=== Weka K-meansクラスタリング結果 ===");
-        writer.println("アルゴリズム: Weka SimpleKMeans");
-        writer.println("最適クラスタ数: " + kmeans.getNumClusters());
+        writer.println("アルゴリズム: " + algorithm);
+        writer.println("最適クラスタ数: " + centroids.numInstances());
         writer.println("距離関数: ユークリッド距離");
         writer.println("初期化方法: K-means++");
-        writer.println("総平方和誤差 (SSE): " + kmeans.getSquaredError());
+        writer.println("総平方和誤差 (SSE): " + sse);
+        if (approximation != null) {
+            writer.print(approximation);
+        }
         writer.println();
         
         writer.println("クラスタ中心:");
-        writer.println(kmeans.getClusterCentroids());
+        writer.println(centroids);
         writer.println();
         
         writer.println("フレームワーク別クラスタ割り当て:");
-        for (int i = 0; i < data.numInstances(); i++) {
-            int cluster = kmeans.clusterInstance(data.instance(i));
-            writer.println(frameworks[i] + " → クラスタ " + cluster);
+        for (int i = 0; i < assignments.length; i++) {
+            writer.println(frameworks[i] + " → クラスタ " + assignments[i]);
         }
         writer.close();
     }
     
-    private static void saveWekaHierarchicalResults(HierarchicalClusterer hierarchical) throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(RESULTS_DIR + "weka_hierarchical_results.txt"));
+    private static void saveWekaHierarchicalResults(String algorithm, String newick, int k, String approximation,
+                                                  int[] assignments, String[] frameworks) throws Exception {
+        PrintWriter writer = new PrintWriter(new FileWriter(dir(RESULTS_DIR) + "weka_hierarchical_results.txt"));
         writer.println("=== Weka階層クラスタリング結果 ===");
-        writer.println("アルゴリズム: Weka HierarchicalClusterer");
+        writer.println("アルゴリズム: " + algorithm);
         writer.println("連結方法: Ward法");
         writer.println("距離関数: ユークリッド距離");
+        if (approximation != null) {
+            writer.print(approximation);
+        }
         writer.println();
         writer.println("デンドログラム構造:");
-        writer.println(hierarchical.graph());
+        writer.println(newick);
+        writer.println();
+        writer.println("K=" + k + "で切断したクラスタ割り当て:");
+        for (int i = 0; i < assignments.length; i++) {
+            writer.println(frameworks[i] + " → クラスタ " + assignments[i]);
+        }
         writer.close();
     }
     
-    private static void saveWekaPCAResults(PrincipalComponents pca, Instances transformedData, 
-                                         double[] eigenValues, double totalVariance) throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(RESULTS_DIR + "weka_pca_results.txt"));
-        writer.println("=== Weka主成分分析結果 ===");
-        writer.println("アルゴリズム: Weka PrincipalComponents");
-        writer.println("分散保持率: 95%");
+    private static void saveStabilityResults(String sampling, String[] methods, ClusterStability.Result[] results,
+                                             int[][] references, String[] frameworks) throws Exception {
+        PrintWriter writer = new PrintWriter(new FileWriter(dir(RESULTS_DIR) + "weka_cluster_stability.txt"));
+        writer.println("=== クラスタ安定性評価結果 ===");
+        writer.println("再標本化: " + sampling);
+        writer.println("再標本数: " + results[0].replicates);
+        writer.println("Jaccard安定性の目安: 0.75以上で安定、0.5以下は解消しやすいクラスタ");
+        int nextjs = Arrays.asList(frameworks).indexOf("Next.js");
+        for (int m = 0; m < methods.length; m++) {
+            ClusterStability.Result result = results[m];
+            int[] reference = references[m];
+            writer.println();
+            writer.println("[" + methods[m] + " (K=" + result.k + ")]");
+            writer.printf("ARI: 平均 %.4f ± %.4f（5%%点 %.4f, 中央値 %.4f, 95%%点 %.4f）\n", result.meanAri(),
+                result.stdDevAri(), result.ariPercentile(5), result.ariPercentile(50), result.ariPercentile(95));
+            writer.println("クラスタ別Jaccard安定性:");
+            int[] sizes = new int[result.k];
+            for (int label : reference) sizes[label]++;
+            for (int c = 0; c < result.k; c++) {
+                writer.printf("クラスタ %d (%d件): %.4f\n", c, sizes[c], result.jaccard(c));
+            }
+            if (nextjs >= 0 && result.hasCoAssignment()) {
+                // Next.jsと同じクラスタになりやすい順（上位20件）
+                writer.println("Next.js（クラスタ " + reference[nextjs] + "）との同時割り当て頻度:");
+                Integer[] order = new Integer[frameworks.length];
+                for (int i = 0; i < order.length; i++) order[i] = i;
+                Arrays.sort(order, (a, b) -> Double.compare(
+                    orZero(result.coAssignment(nextjs, b)), orZero(result.coAssignment(nextjs, a))));
+                int shown = 0;
+                for (int i : order) {
+                    if (i == nextjs) continue;
+                    if (shown++ == 20) break;
+                    writer.printf("%s: %.4f%s\n", frameworks[i], result.coAssignment(nextjs, i),
+                        reference[i] == reference[nextjs] ? "（同一クラスタ）" : "");
+                }
+            }
+        }
+        writer.close();
+        
+        if (!results[0].hasCoAssignment()) {
+            System.out.println("インスタンス数が" + ClusterStability.CO_ASSIGNMENT_LIMIT
+                + "を超えるため、同時割り当て頻度は出力しません");
+            return;
+        }
+        CsvDatasetEmitter emitter = new CsvDatasetEmitter(new File(dir(CSV_DIR)), options().gzipCsv);
+        try (CsvDatasetEmitter.CsvWriter csv = new CsvDatasetEmitter.CsvWriter(
+                emitter.file("cluster_co_assignment.csv"), options().gzipCsv)) {
+            csv.append("Framework_A,Framework_B,KMeans_Co_Assignment,Ward_Co_Assignment").newline();
+            for (int i = 0; i < frameworks.length; i++) {
+                for (int j = i + 1; j < frameworks.length; j++) {
+                    csv.append(CsvDatasetEmitter.field(frameworks[i])).append(',')
+                        .append(CsvDatasetEmitter.field(frameworks[j]));
+                    for (ClusterStability.Result result : results) {
+                        csv.append(',').appendFixed(result.coAssignment(i, j), 4);
+                    }
+                    csv.newline();
+                }
+            }
+        }
+    }
+    
+    private static double orZero(double value) {
+        return Double.isNaN(value) ? 0 : value;
+    }
+    
+    private static void saveWekaPCAResults(PrincipalComponentAnalysis pca, Instances data,
+                                         DataMatrix projected, String[] frameworks) throws Exception {
+        PrintWriter writer = new PrintWriter(new FileWriter(dir(RESULTS_DIR) + "weka_pca_results.txt"));
+        writer.println("=== 主成分分析結果 ===");
+        writer.println("手法: " + pca.method);
+        writer.println("分散保持率: 95% (" + projected.cols + "成分)");
         writer.println();
         
         writer.println("主成分の寄与率:");
-        for (int i = 0; i < eigenValues.length; i++) {
-            double contribution = (eigenValues[i] / totalVariance) * 100;
-            writer.printf("PC%d: %.2f%%\n", i+1, contribution);
+        double cumulative = 0;
+        for (int k = 0; k < pca.numComponents(); k++) {
+            cumulative += pca.explainedVariance(k);
+            writer.printf("PC%d: 固有値 %.4f, 寄与率 %.2f%%, 累積 %.2f%%\n",
+                k + 1, pca.eigenValues[k], pca.explainedVariance(k), cumulative);
+        }
+        writer.println();
+        
+        writer.println("主成分負荷量:");
+        for (int k = 0; k < pca.numComponents(); k++) {
+            writer.print("PC" + (k + 1) + ":");
+            for (int j = 0; j < data.numAttributes(); j++) {
+                writer.printf(" %s=%.3f", data.attribute(j).name(), pca.components[k][j]);
+            }
+            writer.println();
         }
         writer.println();
         
-        writer.println("PCA変換詳細:");
-        writer.println(pca.toString());
+        writer.println("主成分得点:");
+        for (int i = 0; i < projected.rows; i++) {
+            writer.print(frameworks[i] + ":");
+            for (int k = 0; k < projected.cols; k++) {
+                writer.printf(" PC%d=%.4f", k + 1, projected.get(i, k));
+            }
+            writer.println();
+        }
         writer.close();
     }
     
     private static void saveContradictionAnalysis(String[] frameworks, double[] contradictionIndex, 
                                                 double nextjsIndex, double competitorAvg) throws Exception {
-        PrintWriter writer = new PrintWriter(new FileWriter(RESULTS_DIR + "weka_contradiction_analysis.txt"));
+        PrintWriter writer = new PrintWriter(new FileWriter(dir(RESULTS_DIR) + "weka_contradiction_analysis.txt"));
         writer.println("=== Weka完全版 矛盾指数分析結果 ===");
         writer.println("矛盾指数 = (使用率 / 継続率) × 100");
         writer.println();
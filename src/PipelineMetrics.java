@@ -0,0 +1,211 @@
+import java.io.*;
+import java.lang.management.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.Callable;
+
+/**
+ * 分析ステージごとの計測（経過時間・CPU時間・割り当てバイト数・ピークヒープ・処理行数/インスタンス数）
+ * JMXのスレッド/メモリBeanから取得し、JSONレポートとPrometheusテキスト形式で出力する
+ *
+ * CPU時間と割り当てバイト数はステージ実行中のプロセス全体（並列処理のワーカースレッドを含む）の増分のため、
+ * 並行実行されたステージ同士では重複して計上される（concurrentStagesで判別できる）
+ */
+public class PipelineMetrics {
+
+    /** 実行中のステージの記録（処理件数をステージ内から加算するため） */
+    private static final ThreadLocal<StageRecord> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 1ステージの計測結果
+     */
+    public static final class StageRecord {
+        final String stage;
+        String status;
+        long wallNanos;
+        long cpuNanos = -1;
+        long allocatedBytes = -1;
+        long peakHeapBytes;
+        long rows;
+        long instances;
+        int concurrentStages;
+
+        StageRecord(String stage, String status) {
+            this.stage = stage;
+            this.status = status;
+        }
+
+        double rowsPerSecond() {
+            return wallNanos > 0 ? rows / (wallNanos / 1e9) : 0;
+        }
+    }
+
+    private final List<StageRecord> records = new ArrayList<>();
+    private final long startMillis = System.currentTimeMillis();
+    private final long startNanos = System.nanoTime();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    private int active;
+    private int maxActive;
+
+    public PipelineMetrics() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                heapPools.add(pool);
+            }
+        }
+    }
+
+    /**
+     * 実行中のステージに処理行数を加算（計測外から呼ばれた場合は何もしない）
+     */
+    public static void addRows(long rows) {
+        StageRecord record = CURRENT.get();
+        if (record != null) record.rows += rows;
+    }
+
+    /**
+     * 実行中のステージに処理インスタンス数を加算
+     */
+    public static void addInstances(long instances) {
+        StageRecord record = CURRENT.get();
+        if (record != null) record.instances += instances;
+    }
+
+    /**
+     * ステージを計測しながら実行
+     */
+    public <T> T record(String stage, Callable<T> body) throws Exception {
+        StageRecord record = new StageRecord(stage, "ran");
+        synchronized (this) {
+            // 他のステージの実行中にピーク値をリセットすると、そのステージのピークが失われるため
+            if (active == 0) {
+                for (MemoryPoolMXBean pool : heapPools) {
+                    pool.resetPeakUsage();
+                }
+            }
+            active++;
+            maxActive = Math.max(maxActive, active);
+        }
+        long cpuStart = processCpuNanos();
+        long allocatedStart = allocatedBytes();
+        long start = System.nanoTime();
+        CURRENT.set(record);
+        try {
+            return body.call();
+        } finally {
+            CURRENT.remove();
+            record.wallNanos = System.nanoTime() - start;
+            long cpuEnd = processCpuNanos();
+            long allocatedEnd = allocatedBytes();
+            if (cpuStart >= 0 && cpuEnd >= 0) record.cpuNanos = cpuEnd - cpuStart;
+            if (allocatedStart >= 0 && allocatedEnd >= 0) record.allocatedBytes = Math.max(0, allocatedEnd - allocatedStart);
+            for (MemoryPoolMXBean pool : heapPools) {
+                record.peakHeapBytes += pool.getPeakUsage().getUsed();
+            }
+            synchronized (this) {
+                record.concurrentStages = maxActive;
+                active--;
+                if (active == 0) maxActive = 0;
+                records.add(record);
+            }
+        }
+    }
+
+    /**
+     * 実行しなかったステージを記録（skipped / cached）
+     */
+    public synchronized void skipped(String stage, String status) {
+        records.add(new StageRecord(stage, status));
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    /**
+     * 生存中の全スレッドの累積割り当てバイト数（HotSpot以外など取得できない場合は-1）
+     */
+    private long allocatedBytes() {
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+        if (!hotspot.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        long total = 0;
+        for (long bytes : hotspot.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) total += bytes;
+        }
+        return total;
+    }
+
+    /**
+     * JSONレポートを書き出し
+     */
+    public synchronized void writeJson(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.println("{");
+            writer.printf("  \"startedAt\": %d,\n", startMillis);
+            writer.printf(Locale.ROOT, "  \"totalWallSeconds\": %.6f,\n", (System.nanoTime() - startNanos) / 1e9);
+            writer.println("  \"stages\": [");
+            for (int i = 0; i < records.size(); i++) {
+                StageRecord r = records.get(i);
+                writer.printf(Locale.ROOT, "    {\"stage\": \"%s\", \"status\": \"%s\", \"wallSeconds\": %.6f, "
+                        + "\"cpuSeconds\": %s, \"allocatedBytes\": %d, \"peakHeapBytes\": %d, \"rows\": %d, "
+                        + "\"instances\": %d, \"rowsPerSecond\": %.1f, \"concurrentStages\": %d}%s\n",
+                    r.stage, r.status, r.wallNanos / 1e9,
+                    r.cpuNanos < 0 ? "null" : String.format(Locale.ROOT, "%.6f", r.cpuNanos / 1e9),
+                    r.allocatedBytes, r.peakHeapBytes, r.rows, r.instances, r.rowsPerSecond(), r.concurrentStages,
+                    i < records.size() - 1 ? "," : "");
+            }
+            writer.println("  ]");
+            writer.println("}");
+        }
+    }
+
+    /**
+     * Prometheusテキスト形式（node_exporterのtextfileコレクタ等で収集）で書き出し
+     */
+    public synchronized void writePrometheus(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.println("# HELP nextjs_analysis_last_run_timestamp_seconds Start time of the last pipeline run.");
+            writer.println("# TYPE nextjs_analysis_last_run_timestamp_seconds gauge");
+            writer.printf(Locale.ROOT, "nextjs_analysis_last_run_timestamp_seconds %.3f\n", startMillis / 1e3);
+            writeGauge(writer, "stage_wall_seconds", "Wall-clock time of the stage.", r -> r.wallNanos / 1e9);
+            writeGauge(writer, "stage_cpu_seconds", "Process CPU time while the stage ran.",
+                r -> r.cpuNanos < 0 ? Double.NaN : r.cpuNanos / 1e9);
+            writeGauge(writer, "stage_allocated_bytes", "Heap bytes allocated while the stage ran.",
+                r -> r.allocatedBytes < 0 ? Double.NaN : r.allocatedBytes);
+            writeGauge(writer, "stage_peak_heap_bytes", "Peak heap usage while the stage ran.", r -> r.peakHeapBytes);
+            writeGauge(writer, "stage_rows", "Input rows processed by the stage.", r -> r.rows);
+            writeGauge(writer, "stage_instances", "Instances processed by the stage.", r -> r.instances);
+            writeGauge(writer, "stage_rows_per_second", "Row throughput of the stage.", StageRecord::rowsPerSecond);
+        }
+    }
+
+    private static String format(double value) {
+        if (Double.isNaN(value)) return "NaN";
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) return Long.toString((long) value);
+        return String.format(Locale.ROOT, "%.6f", value);
+    }
+
+    private interface Metric {
+        double value(StageRecord record);
+    }
+
+    private void writeGauge(PrintWriter writer, String name, String help, Metric metric) {
+        writer.println("# HELP nextjs_analysis_" + name + " " + help);
+        writer.println("# TYPE nextjs_analysis_" + name + " gauge");
+        for (StageRecord r : records) {
+            if (!r.status.equals("ran")) continue;
+            double value = metric.value(r);
+            writer.printf(Locale.ROOT, "nextjs_analysis_%s{stage=\"%s\"} %s\n", name, r.stage, format(value));
+        }
+    }
+}
@@ -0,0 +1,322 @@
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * 主成分分析
+ * - 共分散法: CovarianceAccumulatorで1パス集計した共分散行列をJacobi法で固有値分解（列数が少ない場合）
+ * - ランダム化SVD: Halko et al. (2011) の乱択レンジ探索で上位成分のみを求める（列数が多い場合）
+ */
+public class PrincipalComponentAnalysis implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Jacobi法の最大スイープ数 */
+    private static final int MAX_SWEEPS = 100;
+
+    final String method;
+    final double[] mean;
+    /** 上位成分の固有値（共分散行列の分散） */
+    final double[] eigenValues;
+    /** 主成分ベクトル（components[k][j] = 第k主成分の属性jへの負荷量） */
+    final double[][] components;
+    /** 全分散（共分散行列のトレース） */
+    final double totalVariance;
+
+    private PrincipalComponentAnalysis(String method, double[] mean, double[] eigenValues,
+                                       double[][] components, double totalVariance) {
+        this.method = method;
+        this.mean = mean;
+        this.eigenValues = eigenValues;
+        this.components = components;
+        this.totalVariance = totalVariance;
+    }
+
+    /**
+     * 1パス集計済みの共分散行列から全主成分を算出
+     */
+    public static PrincipalComponentAnalysis fromCovariance(CovarianceAccumulator accumulator) {
+        double[][] cov = accumulator.covariance();
+        int d = cov.length;
+        double trace = 0;
+        for (int i = 0; i < d; i++) {
+            trace += cov[i][i];
+        }
+        double[][] vectors = new double[d][d];
+        double[] values = jacobi(cov, vectors);
+
+        Integer[] order = sortedDescending(values);
+        double[] eigenValues = new double[d];
+        double[][] components = new double[d][d];
+        for (int k = 0; k < d; k++) {
+            eigenValues[k] = Math.max(values[order[k]], 0);
+            for (int j = 0; j < d; j++) {
+                components[k][j] = vectors[j][order[k]];
+            }
+            normalizeSign(components[k]);
+        }
+        return new PrincipalComponentAnalysis("共分散行列（1パス集計） + Jacobi固有値分解",
+            accumulator.getMean(), eigenValues, components, trace);
+    }
+
+    /**
+     * ランダム化SVDで上位numComponents個の主成分を算出（列数が多いデータ向け）
+     */
+    public static PrincipalComponentAnalysis randomized(DataMatrix data, int numComponents, int oversampling,
+                                                        int powerIterations, long seed) {
+        int n = data.rows;
+        int d = data.cols;
+        int l = Math.min(Math.min(numComponents + oversampling, d), n);
+        int k = Math.min(numComponents, l);
+
+        // 列平均と全分散（1パス）
+        double[] mean = new double[d];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < d; j++) {
+                mean[j] += data.get(i, j);
+            }
+        }
+        for (int j = 0; j < d; j++) {
+            mean[j] /= n;
+        }
+        double totalVariance = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < d; j++) {
+                double c = data.get(i, j) - mean[j];
+                totalVariance += c * c;
+            }
+        }
+        totalVariance /= (n - 1);
+
+        // Y = A·Ω（Aは中心化済みデータ）、べき乗反復で固有値の減衰を強調
+        Random random = new Random(seed);
+        double[][] omega = new double[d][l];
+        for (double[] row : omega) {
+            for (int c = 0; c < l; c++) {
+                row[c] = random.nextGaussian();
+            }
+        }
+        double[][] q = orthonormalize(multiplyCentered(data, mean, omega));
+        for (int it = 0; it < powerIterations; it++) {
+            q = orthonormalize(multiplyCentered(data, mean, orthonormalize(multiplyCenteredTransposed(data, mean, q))));
+        }
+
+        // B = Qᵀ·A（l×d）、B·Bᵀ の固有値分解から特異値と右特異ベクトルを得る
+        double[][] bt = multiplyCenteredTransposed(data, mean, q); // d×l = Aᵀ·Q
+        double[][] bbt = new double[l][l];
+        for (int a = 0; a < l; a++) {
+            for (int b = a; b < l; b++) {
+                double sum = 0;
+                for (int j = 0; j < d; j++) {
+                    sum += bt[j][a] * bt[j][b];
+                }
+                bbt[a][b] = sum;
+                bbt[b][a] = sum;
+            }
+        }
+        double[][] u = new double[l][l];
+        double[] values = jacobi(bbt, u);
+        Integer[] order = sortedDescending(values);
+
+        double[] eigenValues = new double[k];
+        double[][] components = new double[k][d];
+        for (int c = 0; c < k; c++) {
+            double sigmaSquared = Math.max(values[order[c]], 0);
+            eigenValues[c] = sigmaSquared / (n - 1);
+            double sigma = Math.sqrt(sigmaSquared);
+            for (int j = 0; j < d; j++) {
+                double v = 0;
+                for (int a = 0; a < l; a++) {
+                    v += bt[j][a] * u[a][order[c]];
+                }
+                components[c][j] = sigma > 0 ? v / sigma : 0;
+            }
+            normalizeSign(components[c]);
+        }
+        return new PrincipalComponentAnalysis("ランダム化SVD（上位" + k + "成分, べき乗反復" + powerIterations + "回）",
+            mean, eigenValues, components, totalVariance);
+    }
+
+    /**
+     * データを主成分空間へ射影（上位numComponents成分）
+     */
+    public DataMatrix project(DataMatrix data, int numComponents) {
+        int k = Math.min(numComponents, components.length);
+        DataMatrix projected = new DataMatrix(data.rows, k);
+        for (int i = 0; i < data.rows; i++) {
+            int offset = i * data.cols;
+            for (int c = 0; c < k; c++) {
+                double sum = 0;
+                for (int j = 0; j < data.cols; j++) {
+                    sum += (data.values[offset + j] - mean[j]) * components[c][j];
+                }
+                projected.values[i * k + c] = sum;
+            }
+        }
+        return projected;
+    }
+
+    public int numComponents() {
+        return components.length;
+    }
+
+    /**
+     * 第k主成分の寄与率（%）
+     */
+    public double explainedVariance(int k) {
+        return totalVariance > 0 ? eigenValues[k] / totalVariance * 100 : 0;
+    }
+
+    /**
+     * 累積寄与率がthreshold（%）以上となる最小の成分数
+     */
+    public int componentsCovering(double threshold) {
+        double cumulative = 0;
+        for (int k = 0; k < eigenValues.length; k++) {
+            cumulative += explainedVariance(k);
+            if (cumulative >= threshold) return k + 1;
+        }
+        return eigenValues.length;
+    }
+
+    /**
+     * 巡回Jacobi法による対称行列の固有値分解（aは破壊される、vectorsの各列が固有ベクトル）
+     */
+    static double[] jacobi(double[][] a, double[][] vectors) {
+        int n = a.length;
+        for (int i = 0; i < n; i++) {
+            Arrays.fill(vectors[i], 0);
+            vectors[i][i] = 1;
+        }
+        for (int sweep = 0; sweep < MAX_SWEEPS; sweep++) {
+            double offDiagonal = 0;
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    offDiagonal += a[p][q] * a[p][q];
+                }
+            }
+            if (offDiagonal < 1e-22) break;
+
+            for (int p = 0; p < n; p++) {
+                for (int q = p + 1; q < n; q++) {
+                    if (Math.abs(a[p][q]) < 1e-300) continue;
+                    double theta = (a[q][q] - a[p][p]) / (2 * a[p][q]);
+                    double t = Math.signum(theta) / (Math.abs(theta) + Math.sqrt(theta * theta + 1));
+                    if (theta == 0) t = 1;
+                    double c = 1 / Math.sqrt(t * t + 1);
+                    double s = t * c;
+                    for (int k = 0; k < n; k++) {
+                        double akp = a[k][p];
+                        double akq = a[k][q];
+                        a[k][p] = c * akp - s * akq;
+                        a[k][q] = s * akp + c * akq;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double apk = a[p][k];
+                        double aqk = a[q][k];
+                        a[p][k] = c * apk - s * aqk;
+                        a[q][k] = s * apk + c * aqk;
+                    }
+                    for (int k = 0; k < n; k++) {
+                        double vkp = vectors[k][p];
+                        double vkq = vectors[k][q];
+                        vectors[k][p] = c * vkp - s * vkq;
+                        vectors[k][q] = s * vkp + c * vkq;
+                    }
+                }
+            }
+        }
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = a[i][i];
+        }
+        return values;
+    }
+
+    private static Integer[] sortedDescending(double[] values) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(values[y], values[x]));
+        return order;
+    }
+
+    /**
+     * 符号の任意性を除くため、絶対値最大の要素が正になるよう揃える
+     */
+    private static void normalizeSign(double[] vector) {
+        int largest = 0;
+        for (int j = 1; j < vector.length; j++) {
+            if (Math.abs(vector[j]) > Math.abs(vector[largest])) largest = j;
+        }
+        if (vector[largest] < 0) {
+            for (int j = 0; j < vector.length; j++) {
+                vector[j] = -vector[j];
+            }
+        }
+    }
+
+    /**
+     * (A - 1·meanᵀ)·M（n×l）
+     */
+    private static double[][] multiplyCentered(DataMatrix data, double[] mean, double[][] m) {
+        int l = m[0].length;
+        double[][] out = new double[data.rows][l];
+        for (int i = 0; i < data.rows; i++) {
+            for (int j = 0; j < data.cols; j++) {
+                double x = data.get(i, j) - mean[j];
+                if (x == 0) continue;
+                for (int c = 0; c < l; c++) {
+                    out[i][c] += x * m[j][c];
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * (A - 1·meanᵀ)ᵀ·M（d×l）
+     */
+    private static double[][] multiplyCenteredTransposed(DataMatrix data, double[] mean, double[][] m) {
+        int l = m[0].length;
+        double[][] out = new double[data.cols][l];
+        for (int i = 0; i < data.rows; i++) {
+            for (int j = 0; j < data.cols; j++) {
+                double x = data.get(i, j) - mean[j];
+                if (x == 0) continue;
+                for (int c = 0; c < l; c++) {
+                    out[j][c] += x * m[i][c];
+                }
+            }
+        }
+        return out;
+    }
+
+    /**
+     * 修正Gram-Schmidt法による列の正規直交化（1次従属な列は0にする）
+     */
+    private static double[][] orthonormalize(double[][] y) {
+        int rows = y.length;
+        int cols = y[0].length;
+        for (int c = 0; c < cols; c++) {
+            for (int p = 0; p < c; p++) {
+                double dot = 0;
+                for (int r = 0; r < rows; r++) {
+                    dot += y[r][c] * y[r][p];
+                }
+                for (int r = 0; r < rows; r++) {
+                    y[r][c] -= dot * y[r][p];
+                }
+            }
+            double norm = 0;
+            for (int r = 0; r < rows; r++) {
+                norm += y[r][c] * y[r][c];
+            }
+            norm = Math.sqrt(norm);
+            for (int r = 0; r < rows; r++) {
+                y[r][c] = norm > 1e-12 ? y[r][c] / norm : 0;
+            }
+        }
+        return y;
+    }
+}
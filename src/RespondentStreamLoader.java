@@ -0,0 +1,216 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 回答者単位の生データ（CSV / JSONL）をチャンク単位でストリーミング読み込みするローダー
+ * ファイル全体をヒープに保持せず、一定行数ごとにハンドラへ渡すためメモリ使用量は一定
+ */
+public class RespondentStreamLoader {
+
+    /** 進捗を表示する間隔（行数） */
+    private static final long PROGRESS_INTERVAL = 1_000_000L;
+
+    private final int chunkSize;
+    private long rowCount;
+    private long elapsedNanos;
+
+    /**
+     * チャンク受け取り側のインターフェース
+     */
+    public interface ChunkHandler {
+        void accept(Chunk chunk) throws Exception;
+    }
+
+    /**
+     * 読み込んだ行のまとまり（配列は再利用されるため、ハンドラ外で保持しないこと）
+     */
+    public static final class Chunk {
+        /** 列定義（JSONLでは新しいキーが現れるたびに末尾へ追加され、既存の列番号は変わらない） */
+        private String[] columns;
+        private final String[][] rows;
+        private int size;
+
+        Chunk(String[] columns, int capacity) {
+            this.columns = columns;
+            this.rows = new String[capacity][];
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public String[] columns() {
+            return columns;
+        }
+
+        /**
+         * 列名から列番号を取得（存在しない場合は-1）
+         */
+        public int columnIndex(String name) {
+            for (int i = 0; i < columns.length; i++) {
+                if (columns[i].equals(name)) return i;
+            }
+            return -1;
+        }
+
+        /**
+         * 指定セルの値（列が無い・欠損の場合、その列が現れる前の行の場合はnull）
+         */
+        public String value(int row, int column) {
+            if (column < 0) return null;
+            String[] fields = rows[row];
+            return column < fields.length ? fields[column] : null;
+        }
+    }
+
+    public RespondentStreamLoader(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("チャンクサイズは正の値が必要です: " + chunkSize);
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * ファイルを読み込み、チャンクごとにハンドラへ渡す
+     * 拡張子が .jsonl / .ndjson の場合はJSONL、それ以外はヘッダー付きCSVとして扱う
+     */
+    public long load(File file, ChunkHandler handler) throws Exception {
+        rowCount = 0;
+        long start = System.nanoTime();
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+                loadJsonLines(reader, handler);
+            } else {
+                loadCsv(reader, handler);
+            }
+        }
+        elapsedNanos = System.nanoTime() - start;
+        System.out.printf("回答者データ読み込み: %d行, %.2f秒, %.0f行/秒\n",
+            rowCount, getElapsedSeconds(), getRowsPerSecond());
+        return rowCount;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public double getElapsedSeconds() {
+        return elapsedNanos / 1e9;
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos > 0 ? rowCount / getElapsedSeconds() : 0;
+    }
+
+    private void loadCsv(BufferedReader reader, ChunkHandler handler) throws Exception {
+        String header = reader.readLine();
+        if (header == null) return;
+        Chunk chunk = new Chunk(parseCsvLine(stripBom(header)), chunkSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) continue;
+            append(chunk, parseCsvLine(line), handler);
+        }
+        flush(chunk, handler);
+    }
+
+    /**
+     * JSONL読み込み（キーは行ごとに名前で対応付け、省略されたキーは欠損値として扱う）
+     * 列定義は全行のキーの和集合で、初めて現れたキーは列の末尾に追加する
+     */
+    private void loadJsonLines(BufferedReader reader, ChunkHandler handler) throws Exception {
+        Map<String, Integer> positions = new LinkedHashMap<>();
+        Chunk chunk = new Chunk(new String[0], chunkSize);
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty()) continue;
+            Map<String, Object> object = MiniJson.parseObject(stripBom(line));
+            for (String key : object.keySet()) {
+                positions.putIfAbsent(key, positions.size());
+            }
+            if (positions.size() != chunk.columns.length) {
+                chunk.columns = positions.keySet().toArray(new String[0]);
+            }
+            String[] fields = new String[positions.size()];
+            for (Map.Entry<String, Object> entry : object.entrySet()) {
+                Object value = entry.getValue();
+                fields[positions.get(entry.getKey())] = value == null ? null : jsonScalar(value);
+            }
+            append(chunk, fields, handler);
+        }
+        flush(chunk, handler);
+    }
+
+    private void append(Chunk chunk, String[] fields, ChunkHandler handler) throws Exception {
+        chunk.rows[chunk.size++] = fields;
+        if (chunk.size == chunkSize) {
+            flush(chunk, handler);
+        }
+    }
+
+    private void flush(Chunk chunk, ChunkHandler handler) throws Exception {
+        if (chunk.size == 0) return;
+        handler.accept(chunk);
+        long before = rowCount;
+        rowCount += chunk.size;
+        if (rowCount / PROGRESS_INTERVAL != before / PROGRESS_INTERVAL) {
+            System.out.printf("  ... %d行処理済み\n", rowCount);
+        }
+        Arrays.fill(chunk.rows, 0, chunk.size, null);
+        chunk.size = 0;
+    }
+
+    /**
+     * JSONの数値は整数値なら小数点なしの文字列にする
+     */
+    private static String jsonScalar(Object value) {
+        if (value instanceof Double) {
+            double d = (Double) value;
+            if (d == Math.rint(d) && !Double.isInfinite(d) && Math.abs(d) < 1e15) {
+                return Long.toString((long) d);
+            }
+        }
+        return value.toString();
+    }
+
+    private static String stripBom(String line) {
+        return !line.isEmpty() && line.charAt(0) == '\uFEFF' ? line.substring(1) : line;
+    }
+
+    /**
+     * CSV 1行を分割（ダブルクォートと "" エスケープに対応）
+     */
+    static String[] parseCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        sb.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    sb.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        fields.add(sb.toString());
+        return fields.toArray(new String[0]);
+    }
+}
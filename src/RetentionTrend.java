@@ -0,0 +1,47 @@
+/**
+ * 継続率の年次推移に対する逐次的な最小二乗直線（retention = slope × year + intercept）
+ * 年の平均・継続率の平均と偏差積和をWelford法で更新するため、年を追加する順序によらず同じ直線になり、
+ * 過去の年を保持し直す必要がない
+ */
+public class RetentionTrend {
+
+    private int count;
+    private double meanYear;
+    private double meanRetention;
+    private double sxx;
+    private double sxy;
+
+    /**
+     * 1年分の継続率を追加
+     */
+    public synchronized void add(int year, double retention) {
+        count++;
+        double dx = year - meanYear;
+        meanYear += dx / count;
+        meanRetention += (retention - meanRetention) / count;
+        sxx += dx * (year - meanYear);
+        sxy += dx * (retention - meanRetention);
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    /**
+     * 1年あたりの変化量（2年分以上ない場合はNaN）
+     */
+    public synchronized double slope() {
+        return count < 2 || sxx == 0 ? Double.NaN : sxy / sxx;
+    }
+
+    public synchronized double intercept() {
+        return meanRetention - slope() * meanYear;
+    }
+
+    /**
+     * 回帰直線上の値（傾きが求まらない場合はNaN）
+     */
+    public synchronized double fitted(int year) {
+        return meanRetention + slope() * (year - meanYear);
+    }
+}
@@ -0,0 +1,294 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 回答者セグメント（国・経験年数・企業規模・職種など）別の矛盾指数キューブ
+ * 回答者ストリームを1回走査し、フレームワーク × セグメント列 × セグメント値ごとの回答カウンタを集計する
+ *
+ * 文字列はチャンク受け取り時に列ごとの辞書で整数IDへ変換し、集計はlongキーのオープンアドレス法ハッシュ表で行うため、
+ * 行ごとにMapエントリやボックス化した値を生成しない
+ * 変換済みのチャンクはプールで並列に集計し、タスクごとの部分集計を最後に統合する
+ */
+public class SegmentCube implements RespondentStreamLoader.ChunkHandler {
+
+    /** 全回答者（セグメント分割なし）を表す次元名と値 */
+    static final String OVERALL_DIMENSION = "overall";
+    static final String OVERALL_VALUE = "all";
+    /** セグメント値が欠損している回答 */
+    static final String MISSING_VALUE = "(未回答)";
+
+    // キーのビット配置: フレームワークID(23bit) | 次元(8bit、0は全回答者) | セグメント値ID(32bit)
+    private static final int DIMENSION_SHIFT = 32;
+    private static final int FRAMEWORK_SHIFT = 40;
+    private static final int MAX_FRAMEWORKS = 1 << 23;
+
+    private final String[] dimensions;
+    private final ForkJoinPool pool;
+    private final int maxInFlight;
+    private final Deque<Future<CounterTable>> inFlight = new ArrayDeque<>();
+    private final CounterTable total = new CounterTable(1024);
+    private final Dictionary frameworks = new Dictionary();
+    private final Dictionary[] values;
+    private long skippedRows;
+
+    public SegmentCube(String[] dimensions, ForkJoinPool pool) {
+        if (dimensions.length > 254) {
+            throw new IllegalArgumentException("セグメント列が多すぎます: " + dimensions.length);
+        }
+        this.dimensions = dimensions;
+        this.pool = pool;
+        this.maxInFlight = pool.getParallelism() * 2;
+        this.values = new Dictionary[dimensions.length];
+        for (int d = 0; d < dimensions.length; d++) {
+            values[d] = new Dictionary();
+        }
+    }
+
+    /**
+     * 文字列 → 連番IDの辞書（読み込みスレッドからのみ更新する）
+     */
+    private static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> names = new ArrayList<>();
+
+        int id(String name) {
+            Integer id = ids.get(name);
+            if (id == null) {
+                id = names.size();
+                ids.put(name, id);
+                names.add(name);
+            }
+            return id;
+        }
+
+        String name(int id) {
+            return names.get(id);
+        }
+    }
+
+    /**
+     * longキー → カウンタ列（FrameworkAggregatorと同じ添字）のオープンアドレス法ハッシュ表
+     * キーは非負のため、空きスロットは-1で表す
+     */
+    static final class CounterTable {
+        private static final long EMPTY = -1L;
+        private static final int WIDTH = FrameworkAggregator.NUM_COUNTERS;
+
+        private long[] keys;
+        private int[] slots;
+        private long[] counters;
+        private int size;
+
+        CounterTable(int capacity) {
+            int tableSize = Integer.highestOneBit(Math.max(16, capacity * 2 - 1)) << 1;
+            keys = new long[tableSize];
+            Arrays.fill(keys, EMPTY);
+            slots = new int[tableSize];
+            counters = new long[capacity * WIDTH];
+        }
+
+        int size() {
+            return size;
+        }
+
+        /**
+         * キーのカウンタ列の番号（未登録なら追加）
+         */
+        int slot(long key) {
+            int mask = keys.length - 1;
+            int i = mix(key) & mask;
+            while (keys[i] != EMPTY) {
+                if (keys[i] == key) return slots[i];
+                i = (i + 1) & mask;
+            }
+            int slot = size++;
+            keys[i] = key;
+            slots[i] = slot;
+            if (size * WIDTH > counters.length) {
+                counters = Arrays.copyOf(counters, counters.length * 2);
+            }
+            if (size * 2 > keys.length) {
+                rehash();
+            }
+            return slot;
+        }
+
+        void add(long key, int outcome) {
+            // slot()でカウンタ配列が拡張されうるため、先に位置を確定してから配列を参照する
+            int offset = slot(key) * WIDTH;
+            FrameworkAggregator.count(counters, offset, outcome);
+        }
+
+        void merge(CounterTable other) {
+            for (int i = 0; i < other.keys.length; i++) {
+                if (other.keys[i] == EMPTY) continue;
+                int to = slot(other.keys[i]) * WIDTH;
+                int from = other.slots[i] * WIDTH;
+                for (int c = 0; c < WIDTH; c++) {
+                    counters[to + c] += other.counters[from + c];
+                }
+            }
+        }
+
+        /**
+         * 登録済みキーの昇順（フレームワーク・次元・セグメント値の出現順）
+         */
+        long[] sortedKeys() {
+            long[] sorted = new long[size];
+            int n = 0;
+            for (long key : keys) {
+                if (key != EMPTY) sorted[n++] = key;
+            }
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        long counter(long key, int index) {
+            return counters[slot(key) * WIDTH + index];
+        }
+
+        private void rehash() {
+            long[] oldKeys = keys;
+            int[] oldSlots = slots;
+            keys = new long[oldKeys.length * 2];
+            Arrays.fill(keys, EMPTY);
+            slots = new int[keys.length];
+            int mask = keys.length - 1;
+            for (int j = 0; j < oldKeys.length; j++) {
+                if (oldKeys[j] == EMPTY) continue;
+                int i = mix(oldKeys[j]) & mask;
+                while (keys[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                keys[i] = oldKeys[j];
+                slots[i] = oldSlots[j];
+            }
+        }
+
+        private static int mix(long key) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+
+    @Override
+    public void accept(RespondentStreamLoader.Chunk chunk) throws Exception {
+        int frameworkColumn = chunk.columnIndex("framework");
+        int experienceColumn = chunk.columnIndex("experience");
+        int sentimentColumn = chunk.columnIndex("sentiment");
+        if (frameworkColumn < 0 || experienceColumn < 0) {
+            throw new IllegalArgumentException("必須列がありません: framework, experience");
+        }
+        int[] index = new int[dimensions.length];
+        for (int d = 0; d < dimensions.length; d++) {
+            index[d] = chunk.columnIndex(dimensions[d]);
+            if (index[d] < 0) {
+                throw new IllegalArgumentException("セグメント列がありません: " + dimensions[d]);
+            }
+        }
+
+        // チャンクの配列はハンドラ終了後に再利用されるため、ここで整数IDの配列に変換する
+        int width = dimensions.length;
+        int[] framework = new int[chunk.size()];
+        int[] outcome = new int[chunk.size()];
+        int[] segment = new int[chunk.size() * width];
+        int rows = 0;
+        for (int r = 0; r < chunk.size(); r++) {
+            String name = chunk.value(r, frameworkColumn);
+            String experience = chunk.value(r, experienceColumn);
+            int o = name == null || name.isEmpty() || experience == null
+                ? -1
+                : FrameworkAggregator.outcome(experience, chunk.value(r, sentimentColumn));
+            if (o < 0) {
+                skippedRows++;
+                continue;
+            }
+            framework[rows] = frameworks.id(name);
+            if (framework[rows] >= MAX_FRAMEWORKS) {
+                throw new IllegalStateException("フレームワーク数が多すぎます: " + MAX_FRAMEWORKS);
+            }
+            outcome[rows] = o;
+            for (int d = 0; d < width; d++) {
+                String value = chunk.value(r, index[d]);
+                segment[rows * width + d] = values[d].id(value == null || value.isEmpty() ? MISSING_VALUE : value);
+            }
+            rows++;
+        }
+        int n = rows;
+        inFlight.addLast(pool.submit(() -> aggregate(framework, outcome, segment, n, width)));
+        while (inFlight.size() > maxInFlight) {
+            total.merge(inFlight.removeFirst().get());
+        }
+    }
+
+    /**
+     * 変換済みの1チャンクを部分集計（次元番号0は全回答者、セグメント列dは次元番号d + 1）
+     */
+    private static CounterTable aggregate(int[] framework, int[] outcome, int[] segment, int rows, int width) {
+        CounterTable partial = new CounterTable(256);
+        for (int r = 0; r < rows; r++) {
+            long base = (long) framework[r] << FRAMEWORK_SHIFT;
+            partial.add(base, outcome[r]);
+            for (int d = 0; d < width; d++) {
+                partial.add(base | (long) (d + 1) << DIMENSION_SHIFT | segment[r * width + d], outcome[r]);
+            }
+        }
+        return partial;
+    }
+
+    /**
+     * 残りのタスクを統合
+     */
+    public void finish() throws Exception {
+        while (!inFlight.isEmpty()) {
+            total.merge(inFlight.removeFirst().get());
+        }
+    }
+
+    public long getSkippedRows() {
+        return skippedRows;
+    }
+
+    /**
+     * キューブのセル数（フレームワーク × セグメント値の組み合わせ数）
+     */
+    public int getCellCount() {
+        return total.size();
+    }
+
+    /**
+     * キューブをCSVで書き出し（矛盾指数は利用率 / 継続率 × 100、継続率が算出できないセルは空欄）
+     */
+    public void write(File file, boolean gzip) throws Exception {
+        finish();
+        try (CsvDatasetEmitter.CsvWriter writer = new CsvDatasetEmitter.CsvWriter(file, gzip)) {
+            writer.append("Framework,Segment,Value,Respondents,Usage_Rate,Retention_Rate,Contradiction_Index").newline();
+            for (long key : total.sortedKeys()) {
+                int framework = (int) (key >>> FRAMEWORK_SHIFT);
+                int dimension = (int) (key >>> DIMENSION_SHIFT) & 0xFF;
+                int value = (int) key;
+                long respondents = total.counter(key, FrameworkAggregator.TOTAL);
+                long used = total.counter(key, FrameworkAggregator.USED);
+                long positive = total.counter(key, FrameworkAggregator.USED_POSITIVE);
+                long rated = positive + total.counter(key, FrameworkAggregator.USED_NEGATIVE);
+                double usage = (double) used / respondents;
+                writer.append(CsvDatasetEmitter.field(frameworks.name(framework))).append(',');
+                if (dimension == 0) {
+                    writer.append(OVERALL_DIMENSION).append(',').append(OVERALL_VALUE);
+                } else {
+                    writer.append(dimensions[dimension - 1]).append(',')
+                        .append(CsvDatasetEmitter.field(values[dimension - 1].name(value)));
+                }
+                writer.append(',').appendLong(respondents).append(',').appendFixed(usage, 3).append(',');
+                if (rated > 0 && positive > 0) {
+                    double retention = (double) positive / rated;
+                    writer.appendFixed(retention, 3).append(',').appendFixed(usage / retention * 100, 2);
+                } else {
+                    writer.append(rated > 0 ? "0.000," : ",");
+                }
+                writer.newline();
+            }
+        }
+    }
+}
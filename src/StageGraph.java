@@ -0,0 +1,279 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 分析ステージの依存グラフ
+ * 各ステージのキーは「ステージ名 + パラメータ + 依存ステージのキー」のハッシュで、
+ * キーと出力ファイルが前回実行時と同じステージはスキップし、結果はキャッシュから復元する
+ * 互いに依存しないステージ（例: K-meansと階層クラスタリング）は並行して実行する
+ *
+ * 同じキャッシュディレクトリを使う複数のグラフを同時に実行する場合（常駐モードの並行ジョブ）、
+ * 必要なステージが重なるグラフは実行全体を通して順番に処理する（キャッシュと出力ファイルの書き込みが競合するため）
+ */
+public class StageGraph {
+
+    /** キャッシュ形式やステージ実装を変更したときに上げる */
+    private static final int CACHE_VERSION = 1;
+
+    /** キャッシュファイルのパス → ステージのロック（プロセス内で共有） */
+    private static final ConcurrentHashMap<String, ReentrantLock> STAGE_LOCKS = new ConcurrentHashMap<>();
+
+    /**
+     * ステージの処理（依存ステージの結果を名前で受け取る）
+     */
+    public interface Action {
+        Object run(Map<String, Object> inputs) throws Exception;
+    }
+
+    private static final class Stage {
+        final String name;
+        final List<String> dependencies;
+        final String parameters;
+        final boolean cacheable;
+        final List<File> outputs;
+        final Action action;
+        String key;
+
+        Stage(String name, List<String> dependencies, String parameters, boolean cacheable,
+              List<File> outputs, Action action) {
+            this.name = name;
+            this.dependencies = dependencies;
+            this.parameters = parameters;
+            this.cacheable = cacheable;
+            this.outputs = outputs;
+            this.action = action;
+        }
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<>();
+    private final Map<String, Object> sourceValues = new HashMap<>();
+    private final File cacheDir;
+    private final boolean useCache;
+    private PipelineMetrics metrics;
+
+    public StageGraph(File cacheDir, boolean useCache) {
+        this.cacheDir = cacheDir;
+        this.useCache = useCache;
+    }
+
+    /**
+     * ステージごとの計測を有効化
+     */
+    public StageGraph withMetrics(PipelineMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * 計算済みの入力を登録（keyには内容ハッシュなど入力を識別する値を指定）
+     */
+    public StageGraph source(String name, String key, Object value) {
+        Stage stage = new Stage(name, Collections.emptyList(), "", false, Collections.emptyList(), null);
+        stage.key = key;
+        stages.put(name, stage);
+        sourceValues.put(name, value);
+        return this;
+    }
+
+    /**
+     * ステージを登録（依存ステージは先に登録しておくこと）
+     * cacheableがtrueの場合、結果はSerializableである必要がある
+     */
+    public StageGraph stage(String name, List<String> dependencies, String parameters, boolean cacheable,
+                            List<File> outputs, Action action) {
+        for (String dependency : dependencies) {
+            if (!stages.containsKey(dependency)) {
+                throw new IllegalArgumentException("未登録の依存ステージ: " + name + " → " + dependency);
+            }
+        }
+        stages.put(name, new Stage(name, dependencies, parameters, cacheable, outputs, action));
+        return this;
+    }
+
+    /**
+     * 指定ターゲットとその依存ステージを実行し、各ステージの結果を返す
+     */
+    public Map<String, Object> run(Collection<String> targets, int threads) throws Exception {
+        // ターゲットから依存をたどって必要なステージを集める（登録順 = トポロジカル順）
+        Set<String> required = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>(targets);
+        while (!pending.isEmpty()) {
+            String name = pending.pop();
+            Stage stage = stages.get(name);
+            if (stage == null) {
+                throw new IllegalArgumentException("不明なステージ: " + name + "（利用可能: " + stages.keySet() + "）");
+            }
+            if (required.add(name)) {
+                pending.addAll(stage.dependencies);
+            }
+        }
+        List<Stage> order = new ArrayList<>();
+        for (Stage stage : stages.values()) {
+            if (required.contains(stage.name)) {
+                order.add(stage);
+            }
+        }
+
+        // 他のグラフと共有するステージのロックを名前順に取得（取得順を揃えてデッドロックを避ける）
+        List<String> lockPaths = new ArrayList<>();
+        for (Stage stage : order) {
+            if (stage.action != null) {
+                lockPaths.add(new File(cacheDir, stage.name).getCanonicalPath());
+            }
+        }
+        Collections.sort(lockPaths);
+        Deque<ReentrantLock> held = new ArrayDeque<>();
+        try {
+            for (String path : lockPaths) {
+                ReentrantLock lock = STAGE_LOCKS.computeIfAbsent(path, p -> new ReentrantLock());
+                lock.lockInterruptibly();
+                held.push(lock);
+            }
+            return run(targets, threads, order);
+        } finally {
+            while (!held.isEmpty()) {
+                held.pop().unlock();
+            }
+        }
+    }
+
+    private Map<String, Object> run(Collection<String> targets, int threads, List<Stage> order) throws Exception {
+        // キー算出と、キャッシュが有効なステージの判定
+        Set<String> fresh = new HashSet<>();
+        for (Stage stage : order) {
+            if (stage.action == null) continue;
+            stage.key = computeKey(stage);
+            if (isFresh(stage)) {
+                fresh.add(stage.name);
+            }
+        }
+        // 後ろから順に、実行が必要なステージとその入力として必要な結果を決める
+        // （キャッシュが有効なステージは、実行するステージの入力になる場合だけ結果を読み込む）
+        Set<String> running = new HashSet<>();
+        Set<String> needed = new HashSet<>();
+        for (int i = order.size() - 1; i >= 0; i--) {
+            Stage stage = order.get(i);
+            boolean wanted = targets.contains(stage.name) || needed.contains(stage.name);
+            if (stage.action != null && wanted && !fresh.contains(stage.name)) {
+                running.add(stage.name);
+                needed.addAll(stage.dependencies);
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, order.size())));
+        try {
+            Map<String, CompletableFuture<Object>> futures = new HashMap<>();
+            for (Stage stage : order) {
+                CompletableFuture<?>[] dependencies = stage.dependencies.stream()
+                    .map(futures::get).toArray(CompletableFuture[]::new);
+                CompletableFuture<Object> future = CompletableFuture.allOf(dependencies).thenApplyAsync(v -> {
+                    try {
+                        return execute(stage, futures, running.contains(stage.name), needed.contains(stage.name));
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor);
+                futures.put(stage.name, future);
+            }
+
+            Map<String, Object> results = new LinkedHashMap<>();
+            for (Stage stage : order) {
+                try {
+                    results.put(stage.name, futures.get(stage.name).join());
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof Exception) {
+                        throw (Exception) e.getCause();
+                    }
+                    throw e;
+                }
+            }
+            return results;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private Object execute(Stage stage, Map<String, CompletableFuture<Object>> futures,
+                           boolean run, boolean needed) throws Exception {
+        if (stage.action == null) {
+            return sourceValues.get(stage.name);
+        }
+        if (!run) {
+            if (!needed) {
+                if (stage.cacheable) {
+                    System.out.println("[ステージ] " + stage.name + ": 入力・パラメータに変更なしのためスキップ");
+                    if (metrics != null) metrics.skipped(stage.name, "skipped");
+                }
+                return null;
+            }
+            System.out.println("[ステージ] " + stage.name + ": キャッシュから結果を復元");
+            if (metrics != null) metrics.skipped(stage.name, "cached");
+            return readResult(stage);
+        }
+
+        Map<String, Object> inputs = new HashMap<>();
+        for (String dependency : stage.dependencies) {
+            inputs.put(dependency, futures.get(dependency).join());
+        }
+        long start = System.nanoTime();
+        Object result = metrics != null
+            ? metrics.record(stage.name, () -> stage.action.run(inputs))
+            : stage.action.run(inputs);
+        System.out.printf("[ステージ] %s: 完了 (%.2f秒)\n", stage.name, (System.nanoTime() - start) / 1e9);
+        if (stage.cacheable) {
+            writeResult(stage, result);
+        }
+        return result;
+    }
+
+    private String computeKey(Stage stage) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update(("v" + CACHE_VERSION + "\n" + stage.name + "\n" + stage.parameters + "\n")
+            .getBytes(StandardCharsets.UTF_8));
+        for (String dependency : stage.dependencies) {
+            digest.update((dependency + "=" + stages.get(dependency).key + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte b : digest.digest()) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private boolean isFresh(Stage stage) throws IOException {
+        if (!useCache || !stage.cacheable) {
+            return false;
+        }
+        File keyFile = new File(cacheDir, stage.name + ".key");
+        if (!keyFile.exists() || !new File(cacheDir, stage.name + ".ser").exists()) {
+            return false;
+        }
+        for (File output : stage.outputs) {
+            if (!output.exists()) return false;
+        }
+        return new String(Files.readAllBytes(keyFile.toPath()), StandardCharsets.UTF_8).equals(stage.key);
+    }
+
+    private Object readResult(Stage stage) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                new FileInputStream(new File(cacheDir, stage.name + ".ser"))))) {
+            return in.readObject();
+        }
+    }
+
+    private void writeResult(Stage stage, Object result) throws IOException {
+        cacheDir.mkdirs();
+        File keyFile = new File(cacheDir, stage.name + ".key");
+        keyFile.delete(); // 書き込み途中で中断しても古いキーで誤って再利用しないよう先に消す
+        try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                new FileOutputStream(new File(cacheDir, stage.name + ".ser"))))) {
+            out.writeObject(result);
+        }
+        Files.write(keyFile.toPath(), stage.key.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,181 @@
+import weka.core.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * 数値属性の標準化（zスコア変換）
+ * 列ごとの平均と標準偏差を1パス（Welford法）で求め、元データをコピーせずに変換を適用する
+ * 学習したパラメータは保存・読み込みでき、新しいデータにも同じ変換を適用できる
+ * （Weka Standardizeと同じく標本標準偏差を使い、標準偏差0の列は平均を引くだけ、欠損値はそのまま）
+ */
+public class StandardScaler implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final String[] attributeNames;
+    final double[] mean;
+    final double[] stdDev;
+
+    private StandardScaler(String[] attributeNames, double[] mean, double[] stdDev) {
+        this.attributeNames = attributeNames;
+        this.mean = mean;
+        this.stdDev = stdDev;
+    }
+
+    /**
+     * 数値属性の平均と標準偏差を1パスで算出（名義属性は対象外）
+     */
+    public static StandardScaler fit(Instances data) {
+        int[] columns = numericAttributes(data);
+        int d = columns.length;
+        String[] names = new String[d];
+        for (int c = 0; c < d; c++) {
+            names[c] = data.attribute(columns[c]).name();
+        }
+        double[] mean = new double[d];
+        double[] m2 = new double[d];
+        long[] count = new long[d];
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance instance = data.instance(i);
+            for (int c = 0; c < d; c++) {
+                double x = instance.value(columns[c]);
+                if (Double.isNaN(x)) continue;
+                count[c]++;
+                double delta = x - mean[c];
+                mean[c] += delta / count[c];
+                m2[c] += delta * (x - mean[c]);
+            }
+        }
+        double[] stdDev = new double[d];
+        for (int c = 0; c < d; c++) {
+            stdDev[c] = count[c] > 1 ? Math.sqrt(m2[c] / (count[c] - 1)) : 0;
+        }
+        return new StandardScaler(names, mean, stdDev);
+    }
+
+    public int numAttributes() {
+        return attributeNames.length;
+    }
+
+    public double getMean(int column) {
+        return mean[column];
+    }
+
+    public double getStdDev(int column) {
+        return stdDev[column];
+    }
+
+    /**
+     * 1値を変換
+     */
+    public double transform(int column, double value) {
+        if (Double.isNaN(value)) return value;
+        double centered = value - mean[column];
+        return stdDev[column] > 0 ? centered / stdDev[column] : centered;
+    }
+
+    /**
+     * 数値属性のみの1行を変換（新しいデータ用、引数は変更しない）
+     */
+    public double[] transform(double[] row) {
+        checkWidth(row.length);
+        double[] out = new double[row.length];
+        for (int c = 0; c < row.length; c++) {
+            out[c] = transform(c, row[c]);
+        }
+        return out;
+    }
+
+    /**
+     * 行列をその場で変換
+     */
+    public void transformInPlace(DataMatrix data) {
+        checkWidth(data.cols);
+        for (int i = 0; i < data.rows; i++) {
+            int offset = i * data.cols;
+            for (int c = 0; c < data.cols; c++) {
+                data.values[offset + c] = transform(c, data.values[offset + c]);
+            }
+        }
+    }
+
+    /**
+     * 数値属性のみを標準化したInstancesを作成
+     * 元データの複製や名義属性の削除を経由せず、各行の変換結果を直接インスタンスの値配列として使う
+     */
+    public Instances transform(Instances data) {
+        int[] columns = numericAttributes(data);
+        checkWidth(columns.length);
+        ArrayList<Attribute> attributes = new ArrayList<>();
+        for (int column : columns) {
+            attributes.add(new Attribute(data.attribute(column).name()));
+        }
+        Instances standardized = new Instances(data.relationName() + "_standardized", attributes, data.numInstances());
+        for (int i = 0; i < data.numInstances(); i++) {
+            Instance instance = data.instance(i);
+            double[] values = new double[columns.length];
+            for (int c = 0; c < columns.length; c++) {
+                values[c] = transform(c, instance.value(columns[c]));
+            }
+            standardized.add(new DenseInstance(instance.weight(), values));
+        }
+        return standardized;
+    }
+
+    /**
+     * パラメータをCSV（attribute,mean,std_dev）で保存
+     */
+    public void write(File file) throws IOException {
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.println("attribute,mean,std_dev");
+            for (int c = 0; c < attributeNames.length; c++) {
+                writer.println(CsvDatasetEmitter.field(attributeNames[c]) + "," + Double.toString(mean[c]) + "," + Double.toString(stdDev[c]));
+            }
+        }
+    }
+
+    /**
+     * writeで保存したパラメータを読み込み（別のプロセスでも同じ変換を新しいデータに適用できる）
+     */
+    public static StandardScaler read(File file) throws IOException {
+        List<String> names = new ArrayList<>();
+        List<double[]> parameters = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line = reader.readLine(); // ヘッダー
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty()) continue;
+                String[] fields = RespondentStreamLoader.parseCsvLine(line);
+                if (fields.length != 3) {
+                    throw new IOException("標準化パラメータの形式が不正です: " + line);
+                }
+                names.add(fields[0]);
+                parameters.add(new double[] {Double.parseDouble(fields[1]), Double.parseDouble(fields[2])});
+            }
+        }
+        double[] mean = new double[names.size()];
+        double[] stdDev = new double[names.size()];
+        for (int c = 0; c < mean.length; c++) {
+            mean[c] = parameters.get(c)[0];
+            stdDev[c] = parameters.get(c)[1];
+        }
+        return new StandardScaler(names.toArray(new String[0]), mean, stdDev);
+    }
+
+    private void checkWidth(int width) {
+        if (width != attributeNames.length) {
+            throw new IllegalArgumentException("数値属性数が一致しません: " + attributeNames.length + " / " + width);
+        }
+    }
+
+    private static int[] numericAttributes(Instances data) {
+        int[] columns = new int[data.numAttributes()];
+        int numeric = 0;
+        for (int a = 0; a < data.numAttributes(); a++) {
+            if (data.attribute(a).isNumeric()) {
+                columns[numeric++] = a;
+            }
+        }
+        return Arrays.copyOf(columns, numeric);
+    }
+}
@@ -0,0 +1,225 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * State of JS / State of Reactの集計済み比率データ（surveys/ 以下のJSON）をカテゴリ × 年ごとに読み込む
+ *
+ * 対応する形式:
+ * - responses.allEditions[]（year と ratios を持つ複数年データ、meta_frameworks_ratios.json など）
+ * - responses.currentEdition（ratios のみの単年データ、年は dataPath の版ID（react2024 など）から決める）
+ *
+ * カテゴリは "<調査名>/<セクション>"（例: state_of_js/meta_frameworks）
+ * セクションはエンティティの _metadata.sectionId、なければ dataPath の末尾から2番目の要素
+ * 機能（feature）などライブラリ以外のエンティティと、ratios を持たない設問（pain_points など）は対象外
+ */
+public class SurveyRatios {
+
+    /** 集計済みデータの既定の配置先 */
+    static final String DEFAULT_DIRECTORY = "surveys";
+
+    private static final Pattern YEAR = Pattern.compile("(19|20)\\d{2}");
+
+    /**
+     * 1フレームワーク・1年分の比率（データに含まれない比率はNaN）
+     */
+    static final class Entry {
+        final String framework;
+        final int year;
+        final double usage;
+        final double retention;
+        final double positivity;
+        final double interest;
+        final double awareness;
+        final double appreciation;
+
+        Entry(String framework, int year, Map<String, Object> ratios) {
+            this.framework = framework;
+            this.year = year;
+            this.usage = ratio(ratios, "usage");
+            this.retention = ratio(ratios, "retention");
+            this.positivity = ratio(ratios, "positivity");
+            this.interest = ratio(ratios, "interest");
+            this.awareness = ratio(ratios, "awareness");
+            this.appreciation = ratio(ratios, "appreciation");
+        }
+
+        private static double ratio(Map<String, Object> ratios, String name) {
+            Object value = ratios.get(name);
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+        }
+
+        double[] values() {
+            return new double[] {usage, retention, positivity, interest, awareness, appreciation};
+        }
+    }
+
+    /** カテゴリ → 年 → フレームワークの出現順のデータ */
+    private final Map<String, SortedMap<Integer, List<Entry>>> categories = new TreeMap<>();
+    private final StringBuilder sourceKey = new StringBuilder();
+
+    private SurveyRatios() {
+    }
+
+    /**
+     * ディレクトリ以下のJSONファイルをすべて読み込む
+     */
+    public static SurveyRatios load(File directory) throws IOException {
+        if (!directory.isDirectory()) {
+            throw new FileNotFoundException("集計済みデータのディレクトリがありません: " + directory.getPath());
+        }
+        SurveyRatios ratios = new SurveyRatios();
+        List<File> files = new ArrayList<>();
+        collect(directory, files);
+        files.sort(Comparator.comparing(File::getPath));
+        for (File file : files) {
+            ratios.read(file);
+        }
+        return ratios;
+    }
+
+    private static void collect(File directory, List<File> files) {
+        File[] children = directory.listFiles();
+        if (children == null) return;
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, files);
+            } else if (child.getName().endsWith(".json")) {
+                files.add(child);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void read(File file) throws IOException {
+        Object root = MiniJson.parse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+        if (!(root instanceof List)) return;
+        boolean used = false;
+        for (Object block : (List<Object>) root) {
+            if (!(block instanceof Map)) continue;
+            Map<String, Object> question = (Map<String, Object>) block;
+            String[] path = String.valueOf(question.get("dataPath")).split("\\.");
+            String survey = path.length > 2 ? path[2] : file.getParentFile().getName();
+            String defaultSection = path.length > 1 ? path[path.length - 2] : file.getName();
+            int defaultYear = year(path);
+            Object data = question.get("data");
+            if (!(data instanceof List)) continue;
+            for (Object item : (List<Object>) data) {
+                if (!(item instanceof Map)) continue;
+                Map<String, Object> entity = (Map<String, Object>) item;
+                Map<String, Object> info = child(entity, "entity");
+                if (info == null || (info.get("entityType") != null && !"library".equals(info.get("entityType")))) {
+                    continue;
+                }
+                Map<String, Object> metadata = child(entity, "_metadata");
+                String section = metadata != null && metadata.get("sectionId") != null
+                    ? String.valueOf(metadata.get("sectionId"))
+                    : defaultSection;
+                String category = survey + "/" + section;
+                String name = String.valueOf(info.get("name"));
+                Map<String, Object> responses = child(entity, "responses");
+                if (responses == null) continue;
+                if (responses.get("allEditions") instanceof List) {
+                    for (Object edition : (List<Object>) responses.get("allEditions")) {
+                        if (!(edition instanceof Map)) continue;
+                        Map<String, Object> e = (Map<String, Object>) edition;
+                        Map<String, Object> ratios = child(e, "ratios");
+                        int year = e.get("year") instanceof Number
+                            ? ((Number) e.get("year")).intValue()
+                            : year(new String[] {String.valueOf(e.get("editionId"))});
+                        if (ratios != null && year > 0) {
+                            used |= add(category, new Entry(name, year, ratios));
+                        }
+                    }
+                } else {
+                    Map<String, Object> current = child(responses, "currentEdition");
+                    Map<String, Object> ratios = current != null ? child(current, "ratios") : null;
+                    if (ratios != null && defaultYear > 0) {
+                        used |= add(category, new Entry(name, defaultYear, ratios));
+                    }
+                }
+            }
+        }
+        if (used) {
+            sourceKey.append(file.getPath()).append(':').append(file.length()).append(':')
+                .append(file.lastModified()).append(';');
+        }
+    }
+
+    /**
+     * 追加（同じカテゴリ・年・フレームワークが複数ファイルにある場合は最初のものを使う）
+     */
+    private boolean add(String category, Entry entry) {
+        List<Entry> entries = categories.computeIfAbsent(category, c -> new TreeMap<>())
+            .computeIfAbsent(entry.year, y -> new ArrayList<>());
+        for (Entry e : entries) {
+            if (e.framework.equals(entry.framework)) return false;
+        }
+        entries.add(entry);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> child(Map<String, Object> object, String name) {
+        Object value = object.get(name);
+        return value instanceof Map ? (Map<String, Object>) value : null;
+    }
+
+    /**
+     * dataPathの版ID（js2024 / react2024 など）から年を取得（見つからなければ0）
+     */
+    private static int year(String[] path) {
+        for (String element : path) {
+            Matcher m = YEAR.matcher(element);
+            if (m.find()) {
+                return Integer.parseInt(m.group());
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 読み込んだファイルのパス・サイズ・更新日時（キャッシュの入力キーに使う）
+     */
+    public String getSourceKey() {
+        return sourceKey.toString();
+    }
+
+    public Set<String> categories() {
+        return Collections.unmodifiableSet(categories.keySet());
+    }
+
+    public SortedSet<Integer> years(String category) {
+        SortedMap<Integer, List<Entry>> years = categories.get(category);
+        return years == null ? new TreeSet<>() : new TreeSet<>(years.keySet());
+    }
+
+    /**
+     * カテゴリ・年のデータ（なければ空）
+     */
+    public List<Entry> entries(String category, int year) {
+        SortedMap<Integer, List<Entry>> years = categories.get(category);
+        List<Entry> entries = years != null ? years.get(year) : null;
+        return entries == null ? List.of() : Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * フレームワークの継続率の時系列（年の昇順、継続率がない年は除外）
+     */
+    public SortedMap<Integer, Double> retention(String category, String framework) {
+        SortedMap<Integer, Double> series = new TreeMap<>();
+        SortedMap<Integer, List<Entry>> years = categories.get(category);
+        if (years == null) return series;
+        for (List<Entry> entries : years.values()) {
+            for (Entry e : entries) {
+                if (e.framework.equals(framework) && !Double.isNaN(e.retention)) {
+                    series.put(e.year, e.retention);
+                }
+            }
+        }
+        return series;
+    }
+}
@@ -0,0 +1,295 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 集計済み比率データの全カテゴリ × 全年に対する一括分析
+ * カテゴリ・年の組み合わせごとに独立したタスクとして分析パイプラインを実行し（Java 21以降は仮想スレッド）、
+ * タスクごとの推定メモリ量の合計が上限を超えないよう同時実行数を抑える
+ *
+ * 出力: sweep/<調査>/<カテゴリ>/<年>/ 以下に通常の実行と同じ results/ csv_data/ と sweep.log
+ *       sweep/<調査>/<カテゴリ>/retention_trends.csv に各フレームワークの継続率と最小二乗直線（年の完了ごとに更新、分析に失敗・スキップした年も含む）
+ *       sweep/summary.csv に組み合わせごとの実行結果
+ *
+ * 使い方: java SurveySweep --categories=state_of_js/meta_frameworks --years=2016-2024 --memory-budget=512
+ * 一括実行用以外の引数（--kmeans=minibatch など）は分析オプションとしてそのまま渡す
+ */
+public class SurveySweep {
+
+    /** 分析する最小のフレームワーク数（これ未満の年はクラスタリングが意味をなさないためスキップ） */
+    private static final int MIN_FRAMEWORKS = 3;
+
+    /** 1タスクの固定の推定メモリ量（MB、Wekaのデータセット・結果ファイルの書き出しなど） */
+    private static final int TASK_BASE_MEGABYTES = 32;
+
+    private static final String DEFAULT_TARGETS = "kmeans,hierarchical,pca,contradiction,csv";
+
+    private final File outDir;
+    private final List<String> analysisArgs;
+    private final Semaphore memory;
+    private final int budget;
+    private final PrintStream console;
+    /** カテゴリ → フレームワーク → 完了した年の継続率による回帰直線 */
+    private final Map<String, Map<String, RetentionTrend>> trends = new HashMap<>();
+    /** カテゴリ → 完了した年 → その年のデータ */
+    private final Map<String, SortedMap<Integer, List<SurveyRatios.Entry>>> finished = new HashMap<>();
+
+    /**
+     * 1組み合わせの実行結果
+     */
+    private static final class Task {
+        final String category;
+        final int year;
+        final List<SurveyRatios.Entry> entries;
+        final int megabytes;
+        String status = "queued";
+        double seconds;
+
+        Task(String category, int year, List<SurveyRatios.Entry> entries, int megabytes) {
+            this.category = category;
+            this.year = year;
+            this.entries = entries;
+            this.megabytes = megabytes;
+        }
+    }
+
+    private SurveySweep(File outDir, List<String> analysisArgs, int budget, PrintStream console) {
+        this.outDir = outDir;
+        this.analysisArgs = analysisArgs;
+        this.budget = budget;
+        this.memory = new Semaphore(budget, true);
+        this.console = console;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Set<String> categories = null;
+        int fromYear = 0;
+        int toYear = Integer.MAX_VALUE;
+        int budget = (int) (Runtime.getRuntime().maxMemory() / 2 / (1 << 20));
+        File outDir = new File("sweep");
+        List<String> analysisArgs = new ArrayList<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            String name = eq < 0 ? arg : arg.substring(0, eq);
+            String value = eq < 0 ? "" : arg.substring(eq + 1);
+            switch (name) {
+                case "--categories":
+                    categories = new LinkedHashSet<>(Arrays.asList(value.split(",")));
+                    break;
+                case "--years":
+                    int dash = value.indexOf('-');
+                    fromYear = Integer.parseInt(dash < 0 ? value : value.substring(0, dash));
+                    toYear = dash < 0 ? fromYear : Integer.parseInt(value.substring(dash + 1));
+                    break;
+                case "--memory-budget":
+                    budget = Integer.parseInt(value);
+                    break;
+                case "--out":
+                    outDir = new File(value);
+                    break;
+                case "--category":
+                case "--year":
+                case "--output-root":
+                    throw new IllegalArgumentException(name + " は一括実行では指定できません（--categories / --years を使用）");
+                default:
+                    analysisArgs.add(arg);
+            }
+        }
+        if (budget < 1) {
+            throw new IllegalArgumentException("--memory-budget は1以上が必要です: " + budget);
+        }
+        AnalysisOptions options = AnalysisOptions.parse(analysisArgs.toArray(new String[0]));
+        if (options.respondentsFile != null) {
+            throw new IllegalArgumentException("--respondents は一括実行では指定できません");
+        }
+        NextjsWekaAnalysis.configure(options);
+        SurveyRatios survey = SurveyRatios.load(options.surveyDirectory);
+        if (categories == null) {
+            categories = survey.categories();
+        }
+
+        PrintStream console = ConsoleRouter.install();
+        SurveySweep sweep = new SurveySweep(outDir, analysisArgs, budget, console);
+        List<Task> tasks = new ArrayList<>();
+        for (String category : categories) {
+            if (!survey.categories().contains(category)) {
+                throw new IllegalArgumentException("不明なカテゴリ: " + category + "（利用可能: "
+                    + String.join(", ", survey.categories()) + "）");
+            }
+            for (int year : survey.years(category).subSet(fromYear, toYear == Integer.MAX_VALUE ? toYear : toYear + 1)) {
+                List<SurveyRatios.Entry> entries = survey.entries(category, year);
+                tasks.add(new Task(category, year, entries, Math.min(budget, estimateMegabytes(entries.size(), options))));
+            }
+        }
+
+        console.println("=== 一括分析開始 ===");
+        console.println(categories.size() + "カテゴリ, " + tasks.size() + "組み合わせ, メモリ上限 " + budget + "MB, "
+            + "並列処理スレッド数 " + options.threads);
+        long start = System.nanoTime();
+        sweep.run(tasks);
+        sweep.writeSummary(tasks);
+        console.printf("=== 一括分析完了 (%.2f秒) 結果: %s ===\n",
+            (System.nanoTime() - start) / 1e9, new File(outDir, "summary.csv").getPath());
+    }
+
+    /**
+     * 1タスクの推定メモリ量（MB）
+     * フレームワーク数の2乗に比例する距離行列と、ワーカーごとの同時割り当て頻度の集計（再標本化時）を見込む
+     */
+    static int estimateMegabytes(int frameworks, AnalysisOptions options) {
+        long n = frameworks;
+        long bytes = n * n * Double.BYTES + n * 7 * Double.BYTES * 16;
+        if (n <= ClusterStability.CO_ASSIGNMENT_LIMIT) {
+            bytes += n * n * Integer.BYTES * (options.threads + 1);
+        }
+        return TASK_BASE_MEGABYTES + (int) Math.min(Integer.MAX_VALUE / 2, (bytes + (1 << 20) - 1) >> 20);
+    }
+
+    /**
+     * 全タスクを独立に実行（メモリ上限の範囲で同時実行）し、すべての完了を待つ
+     */
+    private void run(List<Task> tasks) throws Exception {
+        ExecutorService executor = newTaskExecutor();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (Task task : tasks) {
+                futures.add(executor.submit(() -> {
+                    execute(task);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * タスクごとのスレッドを作るExecutor（仮想スレッドが使えない実行環境では通常のスレッド）
+     */
+    private static ExecutorService newTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    private void execute(Task task) throws Exception {
+        String label = task.category + " " + task.year;
+        if (task.entries.size() < MIN_FRAMEWORKS) {
+            task.status = "skipped";
+            console.println("[" + label + "] スキップ: フレームワーク" + task.entries.size() + "件（"
+                + MIN_FRAMEWORKS + "件未満）");
+            // 分析はしないが、継続率の推移には含める
+            yearFinished(task);
+            return;
+        }
+        File root = new File(categoryDir(task.category), String.valueOf(task.year));
+        root.mkdirs();
+
+        List<String> args = new ArrayList<>(analysisArgs);
+        args.add("--category=" + task.category);
+        args.add("--year=" + task.year);
+        args.add("--output-root=" + root.getPath());
+        // 矛盾指数はNext.jsとの比較のため、Next.jsを含まない組み合わせでは除外
+        boolean nextjs = task.entries.stream().anyMatch(e -> e.framework.equals("Next.js"));
+        AnalysisOptions options = AnalysisOptions.parse(args.toArray(new String[0]));
+        List<String> targets = new ArrayList<>(Arrays.asList(
+            options.targets != null ? options.targets : DEFAULT_TARGETS.split(",")));
+        if (!nextjs) {
+            targets.remove("contradiction");
+        }
+        options.targets = targets.toArray(new String[0]);
+
+        memory.acquire(task.megabytes);
+        long start = System.nanoTime();
+        try (PrintStream log = new PrintStream(new FileOutputStream(new File(root, "sweep.log")), true, "UTF-8")) {
+            ConsoleRouter.route(log);
+            try {
+                NextjsWekaAnalysis.analyze(options);
+                task.status = "ok";
+            } catch (Exception e) {
+                e.printStackTrace(log);
+                task.status = "failed: " + String.valueOf(e.getMessage()).replace('\n', ' ');
+            } finally {
+                ConsoleRouter.reset();
+            }
+        } finally {
+            memory.release(task.megabytes);
+        }
+        task.seconds = (System.nanoTime() - start) / 1e9;
+        console.printf("[%s] %s (%.2f秒, 推定%dMB / 上限%dMB)\n", label, task.status, task.seconds, task.megabytes, budget);
+        // 継続率は分析結果ではなく入力データのため、分析の成否によらず推移に含める
+        yearFinished(task);
+    }
+
+    private File categoryDir(String category) {
+        return new File(outDir, category);
+    }
+
+    /**
+     * 処理が終わった年（分析の成否・スキップによらない）の継続率を回帰直線に加え、カテゴリの継続率の推移を書き直す
+     */
+    private void yearFinished(Task task) throws IOException {
+        synchronized (trends) {
+            Map<String, RetentionTrend> byFramework = trends.computeIfAbsent(task.category, c -> new HashMap<>());
+            for (SurveyRatios.Entry entry : task.entries) {
+                if (!Double.isNaN(entry.retention)) {
+                    byFramework.computeIfAbsent(entry.framework, f -> new RetentionTrend()).add(task.year, entry.retention);
+                }
+            }
+            SortedMap<Integer, List<SurveyRatios.Entry>> years =
+                finished.computeIfAbsent(task.category, c -> new TreeMap<>());
+            years.put(task.year, task.entries);
+            writeTrends(new File(categoryDir(task.category), "retention_trends.csv"), years, byFramework);
+        }
+    }
+
+    /**
+     * 完了した年のフレームワーク別継続率と回帰直線（傾きは年あたり、2年分以上ない場合は空欄）
+     */
+    private static void writeTrends(File file, SortedMap<Integer, List<SurveyRatios.Entry>> years,
+                                    Map<String, RetentionTrend> byFramework) throws IOException {
+        File partial = new File(file.getPath() + ".tmp");
+        try (CsvDatasetEmitter.CsvWriter writer = new CsvDatasetEmitter.CsvWriter(partial, false)) {
+            writer.append("Framework,Year,Retention_Rate,Fitted_Rate,Slope_Per_Year").newline();
+            Set<String> frameworks = new TreeSet<>(byFramework.keySet());
+            for (String framework : frameworks) {
+                RetentionTrend trend = byFramework.get(framework);
+                double slope = trend.slope();
+                for (Map.Entry<Integer, List<SurveyRatios.Entry>> year : years.entrySet()) {
+                    for (SurveyRatios.Entry entry : year.getValue()) {
+                        if (!entry.framework.equals(framework) || Double.isNaN(entry.retention)) continue;
+                        writer.append(CsvDatasetEmitter.field(framework)).append(',').appendLong(year.getKey())
+                            .append(',').appendFixed(entry.retention, 3).append(',');
+                        if (!Double.isNaN(slope)) {
+                            writer.appendFixed(trend.fitted(year.getKey()), 3).append(',').appendFixed(slope, 4);
+                        } else {
+                            writer.append(",");
+                        }
+                        writer.newline();
+                    }
+                }
+            }
+        }
+        // 書き込み途中のファイルを読まれないよう、完成後に置き換える
+        if (!partial.renameTo(file) && !(file.delete() && partial.renameTo(file))) {
+            throw new IOException("継続率の推移を保存できません: " + file.getPath());
+        }
+    }
+
+    private void writeSummary(List<Task> tasks) throws IOException {
+        outDir.mkdirs();
+        try (CsvDatasetEmitter.CsvWriter writer = new CsvDatasetEmitter.CsvWriter(new File(outDir, "summary.csv"), false)) {
+            writer.append("Category,Year,Frameworks,Status,Seconds,Estimated_MB").newline();
+            for (Task task : tasks) {
+                writer.append(task.category).append(',').appendLong(task.year).append(',').appendLong(task.entries.size())
+                    .append(',').append(CsvDatasetEmitter.field(task.status)).append(',').appendFixed(task.seconds, 2)
+                    .append(',').appendLong(task.megabytes).newline();
+            }
+        }
+    }
+}
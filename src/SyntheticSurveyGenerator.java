@@ -0,0 +1,122 @@
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * ベンチマーク用の合成アンケートデータ生成
+ * フレームワークごとに認知・使用・肯定の確率をランダムに決め、回答者単位の行（framework, experience, sentiment）を生成する
+ * セグメント別集計用に属性列（country, years_of_experience, company_size, job_role）も一様に割り当てる
+ * 先頭は "Next.js"、2番目は "Gatsby"（矛盾指数分析が前提とするフレームワーク）
+ *
+ * 使い方: java SyntheticSurveyGenerator --respondents=1000000 --frameworks=50 --seed=42 --out=respondents.csv
+ */
+public class SyntheticSurveyGenerator {
+
+    /** セグメント属性の列名と取りうる値 */
+    private static final String[] SEGMENT_COLUMNS = {"country", "years_of_experience", "company_size", "job_role"};
+    private static final String[][] SEGMENT_VALUES = {
+        {"US", "DE", "FR", "GB", "JP", "IN", "BR", "CA"},
+        {"0-1", "1-2", "2-5", "5-10", "10-20", "20+"},
+        {"1", "2-10", "11-50", "51-100", "101-1000", "1000+"},
+        {"frontend", "fullstack", "backend", "manager", "student"}
+    };
+
+    private final int frameworks;
+    private final Random random;
+    /** フレームワークごとの確率 [認知, 認知者の使用, 使用者の肯定, 非使用者の肯定] */
+    private final double[][] profiles;
+
+    public SyntheticSurveyGenerator(int frameworks, long seed) {
+        if (frameworks < 2) {
+            throw new IllegalArgumentException("フレームワーク数は2以上が必要です: " + frameworks);
+        }
+        this.frameworks = frameworks;
+        this.random = new Random(seed);
+        this.profiles = new double[frameworks][];
+        for (int f = 0; f < frameworks; f++) {
+            profiles[f] = new double[] {
+                0.5 + 0.5 * random.nextDouble(),
+                0.05 + 0.6 * random.nextDouble(),
+                0.2 + 0.75 * random.nextDouble(),
+                0.1 + 0.6 * random.nextDouble()
+            };
+        }
+    }
+
+    public static String frameworkName(int index) {
+        switch (index) {
+            case 0: return "Next.js";
+            case 1: return "Gatsby";
+            default: return String.format("Framework-%05d", index);
+        }
+    }
+
+    /**
+     * 回答者単位のCSVを書き出し
+     */
+    public void writeRespondents(File file, long respondents) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            writer.write("framework,experience,sentiment," + String.join(",", SEGMENT_COLUMNS) + "\n");
+            for (long r = 0; r < respondents; r++) {
+                int f = random.nextInt(frameworks);
+                double[] p = profiles[f];
+                writer.write(frameworkName(f));
+                if (random.nextDouble() >= p[0]) {
+                    writer.write(",never_heard,");
+                } else if (random.nextDouble() < p[1]) {
+                    writer.write(random.nextDouble() < p[2] ? ",used,positive" : ",used,negative");
+                } else {
+                    writer.write(random.nextDouble() < p[3] ? ",heard,positive" : ",heard,negative");
+                }
+                for (String[] values : SEGMENT_VALUES) {
+                    writer.write(',');
+                    writer.write(values[random.nextInt(values.length)]);
+                }
+                writer.write('\n');
+            }
+        }
+    }
+
+    /**
+     * 件数を解析（1000000 のほか 1e6 のような指数表記も可、整数でない値・負の値はエラー）
+     */
+    static long parseCount(String value) {
+        long count;
+        try {
+            count = new BigDecimal(value).longValueExact();
+        } catch (ArithmeticException | NumberFormatException e) {
+            count = -1;
+        }
+        if (count < 0) {
+            throw new IllegalArgumentException("件数は0以上の整数で指定してください: " + value);
+        }
+        return count;
+    }
+
+    public static void main(String[] args) throws Exception {
+        long respondents = 1_000_000;
+        int frameworks = 6;
+        long seed = 42;
+        File out = new File("respondents.csv");
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("不明な引数: " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "respondents": respondents = parseCount(value); break;
+                case "frameworks": frameworks = Integer.parseInt(value); break;
+                case "seed": seed = Long.parseLong(value); break;
+                case "out": out = new File(value); break;
+                default: throw new IllegalArgumentException("不明なオプション: " + arg);
+            }
+        }
+        long start = System.nanoTime();
+        new SyntheticSurveyGenerator(frameworks, seed).writeRespondents(out, respondents);
+        System.out.printf("合成データ生成完了: %s (%d回答, %dフレームワーク, %.2f秒)\n",
+            out.getPath(), respondents, frameworks, (System.nanoTime() - start) / 1e9);
+    }
+}
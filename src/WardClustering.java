@@ -0,0 +1,277 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Nearest-neighbor-chain法によるWard法階層クラスタリング
+ * 距離はLance-Williams更新式で二乗ユークリッド距離上に保持し、結合高さはその平方根とする
+ * 距離行列は圧縮形式（CondensedDistanceMatrix）でヒープ外に置くため、数万インスタンス規模でもGC負荷が小さい
+ *
+ * 重み（各点が代表する件数）を与えると、要約済みクラスタ（例: 部分クラスタの中心）から開始できる
+ */
+public class WardClustering {
+
+    private final int n;
+    /** 結合mの左右の子（0..n-1は葉、n+iは結合iで生じたノード） */
+    private final int[] left;
+    private final int[] right;
+    private final double[] heights;
+    private final double[] sizes;
+
+    private WardClustering(int n, int[] left, int[] right, double[] heights, double[] sizes) {
+        this.n = n;
+        this.left = left;
+        this.right = right;
+        this.heights = heights;
+        this.sizes = sizes;
+    }
+
+    /**
+     * 点集合に対してWard法を実行（weightsがnullの場合は全点の重み1、poolがnullの場合は呼び出しスレッドのみで計算）
+     */
+    public static WardClustering fit(DataMatrix points, double[] weights, ForkJoinPool pool,
+                                     long mappingThreshold) throws Exception {
+        int n = points.rows;
+        double[] size = new double[n];
+        for (int i = 0; i < n; i++) {
+            size[i] = weights == null ? 1.0 : weights[i];
+        }
+        if (n < 2) {
+            return new WardClustering(n, new int[0], new int[0], new double[0], new double[0]);
+        }
+
+        try (CondensedDistanceMatrix distances = CondensedDistanceMatrix.allocate(n, mappingThreshold)) {
+            // 初期距離: 2·na·nb/(na+nb)·||a-b||²（重み1同士では二乗距離そのもの）
+            IntConsumer fillRow = i -> {
+                for (int j = i + 1; j < n; j++) {
+                    double scale = 2 * size[i] * size[j] / (size[i] + size[j]);
+                    distances.set(i, j, (float) (scale * points.squaredDistance(i, j)));
+                }
+            };
+            if (pool == null) {
+                IntStream.range(0, n - 1).forEach(fillRow);
+            } else {
+                pool.submit(() -> IntStream.range(0, n - 1).parallel().forEach(fillRow)).get();
+            }
+            return nearestNeighborChain(n, distances, size.clone(), size);
+        }
+    }
+
+    private static WardClustering nearestNeighborChain(int n, CondensedDistanceMatrix distances, double[] size,
+                                                       double[] leafSize) {
+        // 有効なクラスタ（スロット番号）の一覧。スロットsのクラスタは常に葉sを含む
+        int[] active = new int[n];
+        int[] position = new int[n];
+        for (int i = 0; i < n; i++) {
+            active[i] = i;
+            position[i] = i;
+        }
+        int numActive = n;
+
+        int[] chain = new int[n];
+        int chainLength = 0;
+        int[] mergeA = new int[n - 1];
+        int[] mergeB = new int[n - 1];
+        double[] mergeHeight = new double[n - 1];
+
+        for (int m = 0; m < n - 1; m++) {
+            if (chainLength == 0) {
+                chain[chainLength++] = active[0];
+            }
+            int a;
+            int b;
+            double distance;
+            while (true) {
+                a = chain[chainLength - 1];
+                b = chainLength >= 2 ? chain[chainLength - 2] : -1;
+                distance = b >= 0 ? distances.get(a, b) : Double.POSITIVE_INFINITY;
+                int previous = b;
+                for (int p = 0; p < numActive; p++) {
+                    int k = active[p];
+                    if (k == a) continue;
+                    double d = distances.get(a, k);
+                    if (d < distance) { // 同距離ならチェーン上の直前ノードを優先
+                        distance = d;
+                        b = k;
+                    }
+                }
+                if (b == previous) break;
+                chain[chainLength++] = b;
+            }
+            chainLength -= 2;
+
+            // 相互最近傍 a, b を結合し、スロットkeepに格納
+            int keep = Math.min(a, b);
+            int drop = Math.max(a, b);
+            mergeA[m] = a;
+            mergeB[m] = b;
+            mergeHeight[m] = Math.sqrt(Math.max(distance, 0));
+
+            double sizeA = size[a];
+            double sizeB = size[b];
+            int last = active[--numActive];
+            active[position[drop]] = last;
+            position[last] = position[drop];
+            for (int p = 0; p < numActive; p++) {
+                int k = active[p];
+                if (k == keep) continue;
+                double sizeK = size[k];
+                double updated = ((sizeA + sizeK) * distances.get(a, k)
+                    + (sizeB + sizeK) * distances.get(b, k)
+                    - sizeK * distance) / (sizeA + sizeB + sizeK);
+                distances.set(keep, k, (float) updated);
+            }
+            size[keep] = sizeA + sizeB;
+        }
+        return buildDendrogram(n, mergeA, mergeB, mergeHeight, leafSize);
+    }
+
+    /**
+     * NN-chainの結合順（高さ順ではない）を高さ順に並べ替え、Union-Findでノード番号を振り直す
+     */
+    private static WardClustering buildDendrogram(int n, int[] mergeA, int[] mergeB, double[] mergeHeight,
+                                                  double[] leafSize) {
+        Integer[] order = new Integer[n - 1];
+        for (int m = 0; m < order.length; m++) {
+            order[m] = m;
+        }
+        Arrays.sort(order, Comparator.comparingDouble(m -> mergeHeight[m]));
+
+        int[] parent = new int[n];
+        int[] node = new int[n];
+        double[] clusterSize = leafSize.clone();
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+            node[i] = i;
+        }
+        int[] left = new int[n - 1];
+        int[] right = new int[n - 1];
+        double[] heights = new double[n - 1];
+        double[] sizes = new double[n - 1];
+        for (int i = 0; i < order.length; i++) {
+            int m = order[i];
+            int ra = find(parent, mergeA[m]);
+            int rb = find(parent, mergeB[m]);
+            left[i] = Math.min(node[ra], node[rb]);
+            right[i] = Math.max(node[ra], node[rb]);
+            heights[i] = mergeHeight[m];
+            parent[rb] = ra;
+            node[ra] = n + i;
+            clusterSize[ra] += clusterSize[rb];
+            sizes[i] = clusterSize[ra];
+        }
+        return new WardClustering(n, left, right, heights, sizes);
+    }
+
+    private static int find(int[] parent, int x) {
+        while (parent[x] != x) {
+            parent[x] = parent[parent[x]];
+            x = parent[x];
+        }
+        return x;
+    }
+
+    public int numLeaves() {
+        return n;
+    }
+
+    /**
+     * 高さ順の結合高さ
+     */
+    public double[] getHeights() {
+        return heights;
+    }
+
+    /**
+     * 結合iで生じたクラスタの件数（重みの和）
+     */
+    public double getMergeSize(int merge) {
+        return sizes[merge];
+    }
+
+    /**
+     * デンドログラムをK個のクラスタで切断した割り当て（番号は葉の出現順）
+     */
+    public int[] cut(int k) {
+        if (k < 1 || k > n) {
+            throw new IllegalArgumentException("クラスタ数が不正です: " + k);
+        }
+        int[] parent = new int[2 * n - 1];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < n - k; i++) {
+            parent[left[i]] = n + i;
+            parent[right[i]] = n + i;
+        }
+        int[] labels = new int[n];
+        int[] clusterIds = new int[parent.length];
+        Arrays.fill(clusterIds, -1);
+        int numClusters = 0;
+        for (int leaf = 0; leaf < n; leaf++) {
+            int root = find(parent, leaf);
+            if (clusterIds[root] < 0) {
+                clusterIds[root] = numClusters++;
+            }
+            labels[leaf] = clusterIds[root];
+        }
+        return labels;
+    }
+
+    /**
+     * Weka HierarchicalClusterer.graph() と同じ "Newick:" 形式で出力（枝長 = 親の高さ - 子の高さ）
+     * 深いデンドログラムでもスタックを溢れさせないよう明示的なスタックで走査する
+     */
+    public String toNewick(String[] labels) {
+        StringBuilder sb = new StringBuilder("Newick:");
+        if (n == 0) return sb.toString();
+        if (n == 1) return sb.append(label(labels, 0)).toString();
+
+        int root = 2 * n - 2;
+        int[] stack = new int[2 * n];
+        int[] state = new int[2 * n];
+        int top = 0;
+        stack[top] = root;
+        state[top] = 0;
+        while (top >= 0) {
+            int node = stack[top];
+            if (node < n) {
+                sb.append(label(labels, node));
+                top--;
+                continue;
+            }
+            int m = node - n;
+            switch (state[top]) {
+                case 0:
+                    sb.append('(');
+                    state[top] = 1;
+                    stack[++top] = left[m];
+                    state[top] = 0;
+                    break;
+                case 1:
+                    appendLength(sb, heights[m] - height(left[m])).append(',');
+                    state[top] = 2;
+                    stack[++top] = right[m];
+                    state[top] = 0;
+                    break;
+                default:
+                    appendLength(sb, heights[m] - height(right[m])).append(')');
+                    top--;
+            }
+        }
+        return sb.toString();
+    }
+
+    private double height(int node) {
+        return node < n ? 0.0 : heights[node - n];
+    }
+
+    private static StringBuilder appendLength(StringBuilder sb, double length) {
+        return sb.append(':').append(String.format(Locale.ROOT, "%.5f", length));
+    }
+
+    private static String label(String[] labels, int leaf) {
+        return labels != null ? labels[leaf] : Integer.toString(leaf);
+    }
+}